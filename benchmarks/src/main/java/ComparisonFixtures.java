@@ -0,0 +1,224 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.PrintStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.function.Supplier;
+import trivia.bench.Comparisons;
+
+// The alternatives the ComparisonBenchmarks measure, in the game's own (unnamed) package so it can
+// use Protocol and Log directly. Loaded by name from ComparisonBenchmarks.
+public class ComparisonFixtures implements Comparisons {
+    private static final int BATCH = 1024; // messages written or read before a stream is rewound
+    private static final long TOKEN = 0x5EED_5EED_5EEDL;
+
+    private Supplier<Object> message;
+    private Supplier<ByteBuffer> frame;
+    private ByteArrayOutputStream serializedBytes;
+    private ObjectOutputStream serializedOut;
+    private int serializedWritten;
+    private byte[] serializedBatch;
+    private ObjectInputStream serializedIn;
+    private int serializedRead;
+    private ByteArrayOutputStream binaryBytes;
+    private WritableByteChannel binaryOut;
+    private int binaryWritten;
+    private byte[] binaryBatch;
+    private DataInputStream binaryIn;
+    private int binaryRead;
+
+    private PrintStream console;
+    private PrintStream logFile;
+    private String clientID = "127.0.0.1"; // not final, so the message is concatenated on every call as in the game
+
+    private DatagramChannel receiver;
+    private DatagramChannel channel;
+    private ByteBuffer buzzPacket;
+    private int port;
+
+    @Override
+    public String setUpFormats(String name) throws IOException {
+        Question question = new Question("Which planet is known as the Red Planet?",
+                new String[] {"Venus", "Mars", "Jupiter", "Saturn"}, "Mars");
+        switch (name) {
+            case "PHASE":
+                // "PHASE:" + fields built a new String per phase, so no back-reference could be used
+                message = () -> new String("PHASE:1:15000:123456789");
+                frame = () -> Protocol.encodePhase(Protocol.PHASE_POLLING, 1, 15000, 123456789L);
+                break;
+            case "ack":
+                message = () -> new String("ack");
+                frame = () -> Protocol.signal(Protocol.ACK);
+                break;
+            case "QUESTION":
+                message = () -> copyOf(question);
+                frame = () -> Protocol.encodeQuestion(question, 1);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown message: " + name);
+        }
+
+        serializedBytes = new ByteArrayOutputStream();
+        serializedOut = new ObjectOutputStream(serializedBytes);
+        binaryBytes = new ByteArrayOutputStream();
+        binaryOut = Channels.newChannel(binaryBytes); // same write path as ClientHandler.sendFrame
+
+        // a batch of each for the decoders to read over and over
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.flush();
+        int header = bytes.size();
+        for (int i = 0; i < BATCH; i++) {
+            out.writeObject(message.get());
+            out.flush();
+        }
+        serializedBatch = bytes.toByteArray();
+        serializedIn = new ObjectInputStream(new ByteArrayInputStream(serializedBatch));
+
+        bytes = new ByteArrayOutputStream();
+        WritableByteChannel channel = Channels.newChannel(bytes);
+        for (int i = 0; i < BATCH; i++) {
+            channel.write(frame.get());
+        }
+        binaryBatch = bytes.toByteArray();
+        binaryIn = new DataInputStream(new ByteArrayInputStream(binaryBatch));
+
+        return name + ": serialization " + (serializedBatch.length - header) / BATCH + " bytes/msg, binary "
+                + binaryBatch.length / BATCH + " bytes/msg";
+    }
+
+    @Override
+    public long encodeSerialized() throws IOException {
+        if (serializedWritten++ == BATCH) {
+            // keeps the stream's back-reference table and the buffer from growing without bound
+            serializedOut.reset();
+            serializedBytes.reset();
+            serializedWritten = 1;
+        }
+        serializedOut.writeObject(message.get());
+        serializedOut.flush();
+        return serializedBytes.size();
+    }
+
+    @Override
+    public long decodeSerialized() throws IOException, ClassNotFoundException {
+        if (serializedRead++ == BATCH) {
+            serializedIn = new ObjectInputStream(new ByteArrayInputStream(serializedBatch));
+            serializedRead = 1;
+        }
+        return serializedIn.readObject() == null ? 0 : 1;
+    }
+
+    @Override
+    public long encodeBinary() throws IOException {
+        if (binaryWritten++ == BATCH) {
+            binaryBytes.reset();
+            binaryWritten = 1;
+        }
+        return binaryOut.write(frame.get());
+    }
+
+    @Override
+    public long decodeBinary() throws IOException {
+        if (binaryRead++ == BATCH) {
+            binaryIn = new DataInputStream(new ByteArrayInputStream(binaryBatch));
+            binaryRead = 1;
+        }
+        return Protocol.readFrame(binaryIn).opcode;
+    }
+
+    // Buffered and flushed on every line, like the console stream the JVM sets up for System.out
+    @Override
+    public void setUpLogging(Path file, String level) throws IOException {
+        if (console == null) {
+            console = System.out;
+        }
+        PrintStream previous = logFile;
+        logFile = new PrintStream(new BufferedOutputStream(new FileOutputStream(file.toFile()), 128), true);
+        System.setOut(logFile);
+        if (previous != null) {
+            previous.close();
+        }
+        Log.setLevel(level);
+    }
+
+    @Override
+    public long println() {
+        System.out.println("Sent TIMER to ClientID=" + clientID);
+        return 1;
+    }
+
+    @Override
+    public long logDebug() {
+        if (Log.isDebugEnabled()) {
+            Log.debug("Sent TIMER to ClientID=" + clientID);
+            return 1;
+        }
+        return 0;
+    }
+
+    @Override
+    public long droppedLogMessages() {
+        return Log.droppedCount();
+    }
+
+    @Override
+    public void setUpBuzzPath() throws IOException {
+        receiver = DatagramChannel.open();
+        receiver.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        port = ((InetSocketAddress) receiver.getLocalAddress()).getPort();
+        channel = DatagramChannel.open();
+        channel.connect(new InetSocketAddress("localhost", port));
+        buzzPacket = ByteBuffer.wrap(Protocol.encodeBuzz(1, TOKEN)).asReadOnlyBuffer();
+    }
+
+    @Override
+    public long buzzSocketPerClick(int roundId) throws IOException {
+        DatagramSocket udpSocket = new DatagramSocket();
+        byte[] buffer = Protocol.encodeBuzz(roundId, TOKEN);
+        InetAddress serverAddress = InetAddress.getByName("localhost");
+        udpSocket.send(new DatagramPacket(buffer, buffer.length, serverAddress, port));
+        udpSocket.close();
+        return buffer.length;
+    }
+
+    @Override
+    public long buzzPersistentChannel() throws IOException {
+        return channel.write(buzzPacket.duplicate());
+    }
+
+    @Override
+    public void tearDown() throws IOException {
+        if (console != null) {
+            System.setOut(console);
+            logFile.close();
+            Log.setLevel("INFO");
+        }
+        if (channel != null) {
+            channel.close();
+            receiver.close();
+        }
+    }
+
+    // A distinct Question with distinct strings, like consecutive questions from the bank
+    private static Question copyOf(Question question) {
+        String[] options = new String[question.getOptions().length];
+        for (int i = 0; i < options.length; i++) {
+            options[i] = new String(question.getOptions()[i]);
+        }
+        return new Question(new String(question.getQuestion()), options, new String(question.getCorrectAnswer()));
+    }
+}
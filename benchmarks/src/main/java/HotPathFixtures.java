@@ -0,0 +1,168 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import trivia.bench.HotPaths;
+
+// The hot paths the JMH benchmarks measure, in the game's own (unnamed) package so it can use
+// Protocol, QuestionBank and the rest directly. Loaded by name from HotPathBenchmarks.
+public class HotPathFixtures implements HotPaths {
+    private static final int PLAYERS = 1000;
+    private static final int SESSIONS = 10_000;
+
+    private Path source;
+    private String bankPath;
+    private String importPath;
+    private QuestionBank bank;
+    private Question question;
+    private ByteBuffer questionFrame;
+    private OutboundQueue queue;
+    private ByteBuffer ack;
+    private QuestionHandler deck;
+    private long deals;
+    private Leaderboard leaderboard;
+    private String[] players;
+    private SessionRegistry sessions;
+    private ByteBuffer[] packets;
+    private DatagramChannel receiver;
+    private DatagramChannel channel;
+    private ByteBuffer buzzPacket;
+    private LatencyHistogram histogram;
+
+    @Override
+    public void setUp(Path dir, int questions) throws Exception {
+        Log.setLevel("WARN"); // importer and bank messages would be measured too
+        source = dir.resolve("questions.txt");
+        writeQuestions(source, questions);
+        bankPath = dir.resolve("questions.qbank").toString();
+        importPath = dir.resolve("import.qbank").toString();
+        QuestionImporter.importFile(source.toString(), bankPath);
+        bank = QuestionBank.open(bankPath);
+        question = bank.get(0);
+        questionFrame = Protocol.encodeQuestion(question, 1);
+
+        queue = new OutboundQueue(64, 5000);
+        ack = Protocol.signal(Protocol.ACK);
+        deck = new QuestionHandler(bank, true, 0, QuestionBank.ANY_CATEGORY, 0);
+
+        leaderboard = new Leaderboard();
+        players = new String[PLAYERS];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = "10.0.0." + (i & 255) + "#" + String.format("%08x", i);
+            leaderboard.register(players[i]);
+        }
+
+        sessions = new SessionRegistry(120, null);
+        packets = new ByteBuffer[SESSIONS];
+        for (int i = 0; i < packets.length; i++) {
+            long token = sessions.create("10.0.0.1", null).token;
+            packets[i] = ByteBuffer.allocateDirect(Protocol.BUZZ_LENGTH).put(Protocol.encodeBuzz(i, token)).flip();
+        }
+
+        // buzzes go to a local port nobody reads
+        receiver = DatagramChannel.open();
+        receiver.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        channel = DatagramChannel.open();
+        channel.connect(receiver.getLocalAddress());
+        buzzPacket = ByteBuffer.wrap(Protocol.encodeBuzz(1, 0x5EED_5EED_5EEDL)).asReadOnlyBuffer();
+
+        histogram = new LatencyHistogram();
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        channel.close();
+        receiver.close();
+        Log.setLevel("INFO");
+    }
+
+    @Override
+    public long encodePhase(int roundId) {
+        return Protocol.encodePhase(Protocol.PHASE_POLLING, roundId, 15000, roundId * 1000L).remaining();
+    }
+
+    @Override
+    public long encodeQuestion(int roundId) {
+        return Protocol.encodeQuestion(question, roundId).remaining();
+    }
+
+    @Override
+    public long decodeQuestion() throws IOException {
+        return Protocol.decode(questionFrame.slice(4, questionFrame.remaining() - 4)).value;
+    }
+
+    @Override
+    public long offerPoll() {
+        queue.offer(ack);
+        return queue.poll().remaining();
+    }
+
+    @Override
+    public long importFile() throws IOException {
+        return QuestionImporter.importFile(source.toString(), importPath).imported;
+    }
+
+    @Override
+    public long openBank() throws IOException {
+        return QuestionBank.open(bankPath).size();
+    }
+
+    @Override
+    public long nextQuestion() {
+        if (deck.outOfQuestions()) {
+            deck = new QuestionHandler(bank, true, ++deals, QuestionBank.ANY_CATEGORY, 0);
+        }
+        long length = deck.getCurrentQuestion().getQuestion().length();
+        deck.nextQuestion();
+        return length;
+    }
+
+    @Override
+    public long addScore(int player) {
+        leaderboard.addScore(players[player % players.length], (player & 1) == 0 ? 10 : -10);
+        return player;
+    }
+
+    // The UDP listener's parse of a buzz packet and the session lookup that finds its player
+    @Override
+    public long parseAndLookup(int packet) {
+        ByteBuffer buzz = packets[packet % packets.length];
+        buzz.rewind();
+        if (buzz.remaining() != Protocol.BUZZ_LENGTH) {
+            return 0;
+        }
+        int roundId = buzz.getInt();
+        SessionRegistry.Session session = sessions.get(buzz.getLong());
+        return session == null ? 0 : roundId;
+    }
+
+    // The client's buzz send on its connected channel
+    @Override
+    public long sendBuzz() throws IOException {
+        return channel.write(buzzPacket.duplicate());
+    }
+
+    @Override
+    public long recordLatency(long nanos) {
+        histogram.record(nanos);
+        return nanos;
+    }
+
+    // CSV questions in the importer's format, with a few categories and difficulties
+    private static void writeQuestions(Path path, int count) throws IOException {
+        String[] categories = {"film", "music", "science", "history"};
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < count; i++) {
+                out.write("Which of these is answer number " + i + " to generated question " + i + "?,"
+                        + "Option A " + i + ",Option B " + i + ",Option C " + i + ",Option D " + i + ","
+                        + "Option " + (char) ('A' + i % 4) + " " + i + "," + categories[i % categories.length] + "," + (1 + i % 3));
+                out.newLine();
+            }
+        }
+    }
+}
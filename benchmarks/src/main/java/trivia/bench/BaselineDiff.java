@@ -0,0 +1,140 @@
+package trivia.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Compares two JMH result files written with -rf csv: a baseline saved before a change and a run
+// after it, on the same machine. Prints each benchmark against its baseline and exits with status 1
+// if any got slower by more than the threshold (default 10%). Scores are times per operation.
+// Run with: java -cp benchmarks.jar trivia.bench.BaselineDiff <baseline.csv> <results.csv> [threshold%]
+public class BaselineDiff {
+    // One row of a JMH csv result
+    private static class Result {
+        final double score;
+        final double error;
+        final String unit;
+
+        Result(double score, double error, String unit) {
+            this.score = score;
+            this.error = error;
+            this.unit = unit;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: java trivia.bench.BaselineDiff <baseline.csv> <results.csv> [threshold%]");
+            System.exit(2);
+        }
+        double threshold = args.length == 3 ? Double.parseDouble(args[2]) : 10;
+        Map<String, Result> baseline = load(Path.of(args[0]));
+        Map<String, Result> results = load(Path.of(args[1]));
+
+        System.out.println("Benchmark                                          baseline          now    change");
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, Result> entry : results.entrySet()) {
+            String name = entry.getKey();
+            Result now = entry.getValue();
+            Result before = baseline.get(name);
+            if (before == null) {
+                System.out.printf("%-48s %12s %12.3f %s    new%n", name, "-", now.score, now.unit);
+                continue;
+            }
+            if (!before.unit.equals(now.unit)) {
+                System.out.printf("%-48s %12.3f %s %12.3f %s    units differ%n", name, before.score, before.unit, now.score, now.unit);
+                continue;
+            }
+            double change = before.score == 0 ? 0 : (now.score - before.score) * 100 / before.score;
+            // only a slowdown beyond both runs' error bars counts
+            boolean regressed = change > threshold && now.score - now.error > before.score + before.error;
+            if (regressed) {
+                regressions.add(name);
+            }
+            System.out.printf("%-48s %12.3f %12.3f %s %+8.1f%%%s%n", name, before.score, now.score, now.unit, change,
+                    regressed ? "  REGRESSION" : "");
+        }
+        if (regressions.isEmpty()) {
+            System.out.println("No benchmark is more than " + threshold + "% slower than " + args[0]);
+            return;
+        }
+        System.out.println(regressions.size() + " benchmark(s) more than " + threshold + "% slower than " + args[0] + ": " + regressions);
+        System.exit(1);
+    }
+
+    // Benchmark name (with its thread count and any parameters) -> result
+    private static Map<String, Result> load(Path path) throws IOException {
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        if (lines.isEmpty()) {
+            throw new IOException(path + " is empty");
+        }
+        List<String> header = split(lines.get(0));
+        int benchmark = column(header, "Benchmark", path);
+        int threads = column(header, "Threads", path);
+        int score = column(header, "Score", path);
+        int error = column(header, "Score Error (99.9%)", path);
+        int unit = column(header, "Unit", path);
+        Map<String, Result> results = new LinkedHashMap<>();
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.isBlank()) {
+                continue;
+            }
+            List<String> fields = split(line);
+            String qualified = fields.get(benchmark);
+            StringBuilder name = new StringBuilder(qualified.substring(qualified.lastIndexOf('.', qualified.lastIndexOf('.') - 1) + 1));
+            name.append(" x").append(fields.get(threads));
+            for (int i = unit + 1; i < fields.size(); i++) { // "Param: name" columns follow the unit
+                if (!fields.get(i).isEmpty()) {
+                    name.append(' ').append(header.get(i).substring("Param: ".length())).append('=').append(fields.get(i));
+                }
+            }
+            String errorText = fields.get(error);
+            results.put(name.toString(), new Result(number(fields.get(score)),
+                    errorText.isEmpty() || errorText.equals("NaN") ? 0 : number(errorText), fields.get(unit)));
+        }
+        return results;
+    }
+
+    private static int column(List<String> header, String name, Path path) throws IOException {
+        int index = header.indexOf(name);
+        if (index < 0) {
+            throw new IOException(path + " has no \"" + name + "\" column; write it with -rf csv");
+        }
+        return index;
+    }
+
+    // JMH writes the decimal separator of the default locale
+    private static double number(String text) {
+        return Double.parseDouble(text.replace(',', '.'));
+    }
+
+    // Splits a csv line, honouring double-quoted fields
+    private static List<String> split(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -0,0 +1,170 @@
+package trivia.bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// The measurements behind the protocol, logging and buzz path choices, each reported in ns per
+// operation: the previous approach next to the one the game uses now.
+// Run just these with: java -jar benchmarks/target/benchmarks.jar ComparisonBenchmarks
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ComparisonBenchmarks {
+
+    // Message formats: Java serialization against the binary protocol, per message type.
+    // The bytes per message of each format are printed when the trial starts.
+    @State(Scope.Benchmark)
+    public static class Formats {
+        @Param({"PHASE", "ack", "QUESTION"})
+        String message;
+
+        Comparisons fixtures;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            fixtures = load();
+            System.out.println(fixtures.setUpFormats(message));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            fixtures.tearDown();
+        }
+    }
+
+    // Logging on the calling thread: System.out.println and the async Log, both writing to a real
+    // file through a line-flushed stream like the console's. The file is started afresh every iteration.
+    @State(Scope.Benchmark)
+    public static class Console {
+        Path dir;
+        Comparisons fixtures;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            dir = Files.createTempDirectory("benchmarks");
+            fixtures = load();
+        }
+
+        @Setup(Level.Iteration)
+        public void openFile() throws Exception {
+            fixtures.setUpLogging(dir.resolve("console.log"), level());
+        }
+
+        String level() {
+            return "INFO";
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            fixtures.tearDown();
+            deleteDirectory(dir);
+        }
+    }
+
+    // At DEBUG a caller logging flat out soon fills the ring faster than the file takes it, so most
+    // calls measure the drop path; the number dropped is printed at the end of the trial.
+    @State(Scope.Benchmark)
+    public static class Logging extends Console {
+        @Param({"DEBUG", "INFO"})
+        String level; // at INFO the debug message is not even built
+
+        @Override
+        String level() {
+            return level;
+        }
+
+        @TearDown(Level.Trial)
+        public void reportDropped() {
+            System.out.println("Log dropped " + fixtures.droppedLogMessages() + " messages while its ring was full");
+        }
+    }
+
+    // Click-to-packet: from the Poll click to the buzz handed to the kernel
+    @State(Scope.Benchmark)
+    public static class BuzzPath {
+        Comparisons fixtures;
+        int roundId;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            fixtures = load();
+            fixtures.setUpBuzzPath();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            fixtures.tearDown();
+        }
+    }
+
+    @Benchmark
+    public long formatEncodeSerialized(Formats formats) throws Exception {
+        return formats.fixtures.encodeSerialized();
+    }
+
+    @Benchmark
+    public long formatDecodeSerialized(Formats formats) throws Exception {
+        return formats.fixtures.decodeSerialized();
+    }
+
+    @Benchmark
+    public long formatEncodeBinary(Formats formats) throws Exception {
+        return formats.fixtures.encodeBinary();
+    }
+
+    @Benchmark
+    public long formatDecodeBinary(Formats formats) throws Exception {
+        return formats.fixtures.decodeBinary();
+    }
+
+    @Benchmark
+    public long loggingPrintln(Console console) {
+        return console.fixtures.println();
+    }
+
+    @Benchmark
+    public long loggingLogDebug(Logging logging) {
+        return logging.fixtures.logDebug();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long buzzSocketPerClick(BuzzPath buzzPath) throws Exception {
+        return buzzPath.fixtures.buzzSocketPerClick(buzzPath.roundId++);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long buzzPersistentChannel(BuzzPath buzzPath) throws Exception {
+        return buzzPath.fixtures.buzzPersistentChannel();
+    }
+
+    private static Comparisons load() throws Exception {
+        return (Comparisons) Class.forName("ComparisonFixtures").getDeclaredConstructor().newInstance();
+    }
+
+    private static void deleteDirectory(Path dir) throws Exception {
+        try (var files = Files.list(dir)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+}
@@ -0,0 +1,41 @@
+package trivia.bench;
+
+import java.nio.file.Path;
+
+// The alternatives behind the protocol, logging and buzz path choices, side by side with what the
+// game does now. Implemented by the default-package ComparisonFixtures, like HotPaths.
+// Every method returns something derived from its work, for JMH to consume.
+public interface Comparisons {
+    // Builds the PHASE, ack or QUESTION message in both formats; returns the bytes per message of each
+    String setUpFormats(String message) throws Exception;
+
+    // Previous format: one long-lived object stream per client, flushed after every message
+    long encodeSerialized() throws Exception;
+
+    long decodeSerialized() throws Exception;
+
+    // Current format: length-prefixed binary frames
+    long encodeBinary() throws Exception;
+
+    long decodeBinary() throws Exception;
+
+    // Points System.out, and so the Log flusher, at a fresh file and sets the log level
+    void setUpLogging(Path file, String level) throws Exception;
+
+    long println();
+
+    long logDebug();
+
+    long droppedLogMessages();
+
+    // Opens a local port nobody reads for the buzzes to go to
+    void setUpBuzzPath() throws Exception;
+
+    // Previous buzz path: a socket opened, the server resolved and the buzz encoded on every click
+    long buzzSocketPerClick(int roundId) throws Exception;
+
+    // Current buzz path: a pre-encoded buzz sent on a channel connected once
+    long buzzPersistentChannel() throws Exception;
+
+    void tearDown() throws Exception;
+}
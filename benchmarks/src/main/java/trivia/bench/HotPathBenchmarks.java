@@ -0,0 +1,124 @@
+package trivia.bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// The paths every question, buzz and answer goes through, each reported in ns per operation.
+// The fixtures are shared by all threads of a benchmark; the counters are per thread.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HotPathBenchmarks {
+    private static final int QUESTIONS = 50_000; // size of the generated bank
+    private static final int CONTENDING_THREADS = 4;
+
+    private Path dir;
+    private HotPaths paths;
+
+    // A per-thread counter, so rounds, players and packets differ from call to call
+    @State(Scope.Thread)
+    public static class Counter {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("benchmarks");
+        paths = (HotPaths) Class.forName("HotPathFixtures").getDeclaredConstructor().newInstance();
+        paths.setUp(dir, QUESTIONS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        paths.tearDown();
+        try (var files = Files.list(dir)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    // Frames built for every question and phase
+
+    @Benchmark
+    public long protocolEncodePhase(Counter counter) {
+        return paths.encodePhase(counter.next++);
+    }
+
+    @Benchmark
+    public long protocolEncodeQuestion(Counter counter) {
+        return paths.encodeQuestion(counter.next++);
+    }
+
+    @Benchmark
+    public long protocolDecodeQuestion() throws Exception {
+        return paths.decodeQuestion();
+    }
+
+    @Benchmark
+    public long outboundQueueOfferPoll() {
+        return paths.offerPoll();
+    }
+
+    // Question bank: import from source, mapping, and dealing from a shuffled deck
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long questionImporterImportFile() throws Exception {
+        return paths.importFile();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long questionBankOpen() throws Exception {
+        return paths.openBank();
+    }
+
+    @Benchmark
+    public long questionHandlerNextQuestion() {
+        return paths.nextQuestion();
+    }
+
+    // Score updates from several judging threads at once
+
+    @Benchmark
+    @Threads(CONTENDING_THREADS)
+    public long leaderboardAddScore(Counter counter) {
+        return paths.addScore(counter.next++);
+    }
+
+    // Buzz packet parsing and the session lookup that finds its player, and the client's send
+
+    @Benchmark
+    public long buzzParseAndLookup(Counter counter) {
+        return paths.parseAndLookup(counter.next++);
+    }
+
+    @Benchmark
+    public long buzzSendConnected() throws Exception {
+        return paths.sendBuzz();
+    }
+
+    @Benchmark
+    public long latencyHistogramRecord(Counter counter) {
+        return paths.recordLatency(counter.next++ * 37L);
+    }
+}
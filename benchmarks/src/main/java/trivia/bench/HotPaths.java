@@ -0,0 +1,36 @@
+package trivia.bench;
+
+import java.nio.file.Path;
+
+// The game's hot paths as seen by the benchmarks. The game's classes live in the unnamed package,
+// which JMH benchmark classes cannot import, so the default-package HotPathFixtures implements this
+// and the benchmarks load it by name. There is only one implementation, so the JIT inlines the calls.
+// Every method returns something derived from its work, for JMH to consume.
+public interface HotPaths {
+    // Generates a bank of questions under dir and builds the fixtures the paths run against
+    void setUp(Path dir, int questions) throws Exception;
+
+    void tearDown() throws Exception;
+
+    long encodePhase(int roundId);
+
+    long encodeQuestion(int roundId);
+
+    long decodeQuestion() throws Exception;
+
+    long offerPoll();
+
+    long importFile() throws Exception;
+
+    long openBank() throws Exception;
+
+    long nextQuestion();
+
+    long addScore(int player);
+
+    long parseAndLookup(int packet);
+
+    long sendBuzz() throws Exception;
+
+    long recordLatency(long nanos);
+}
@@ -0,0 +1,89 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Per-room stage that judges answers. I/O threads only decode an ANSWER line and queue it here;
+// one drain task at a time per room takes queued answers in batches, judges them in arrival order
+// and queues every verdict before asking the I/O threads to write, so a burst at the end of the
+// answer window costs one write request per player per batch rather than one per answer, and no
+// I/O thread ever waits on scoring.
+public class AnswerInbox {
+    private static final int MAX_BATCH = 512; // answers judged between two rounds of writes
+    private static final int FLUSH_DEPTH = 16; // verdicts queued for one player before it is written early
+
+    private final GameRoom room;
+    private final ConcurrentLinkedQueue<Answer> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean(false); // true while a drain task owns the room's answers
+
+    // One decoded ANSWER line
+    private static class Answer {
+        final Server.ClientHandler clientHandler;
+        final int roundId;
+        final String answer;
+        final long receivedAt; // System.nanoTime() when the line was read
+
+        Answer(Server.ClientHandler clientHandler, int roundId, String answer, long receivedAt) {
+            this.clientHandler = clientHandler;
+            this.roundId = roundId;
+            this.answer = answer;
+            this.receivedAt = receivedAt;
+        }
+    }
+
+    public AnswerInbox(GameRoom room) {
+        this.room = room;
+    }
+
+    // Queues an answer for judging; never blocks the calling I/O thread
+    public void submit(Server.ClientHandler clientHandler, int roundId, String answer, long receivedAt) {
+        queue.add(new Answer(clientHandler, roundId, answer, receivedAt));
+        if (draining.compareAndSet(false, true)) {
+            Server.startTask(this::drain);
+        }
+    }
+
+    private void drain() {
+        Answer[] batch = new Answer[MAX_BATCH];
+        Set<Server.ClientHandler> replied = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Server.ClientHandler> toFlush = new ArrayList<>();
+        do {
+            int size;
+            while ((size = take(batch)) > 0) {
+                for (int i = 0; i < size; i++) {
+                    Answer answer = batch[i];
+                    batch[i] = null;
+                    byte verdict = room.judgeAnswer(answer.clientHandler.getclientID(), answer.roundId, answer.answer);
+                    answer.clientHandler.queueFrame(Protocol.signal(verdict));
+                    ServerMetrics.answerToVerdict.record(System.nanoTime() - answer.receivedAt);
+                    if (replied.add(answer.clientHandler)) {
+                        toFlush.add(answer.clientHandler);
+                    } else if (answer.clientHandler.queueDepth() >= FLUSH_DEPTH) {
+                        answer.clientHandler.flushFrames(); // a player sending many answers should not fill its queue
+                    }
+                }
+                // verdicts for the whole batch are queued; now wake the writers once per player
+                for (Server.ClientHandler clientHandler : toFlush) {
+                    clientHandler.flushFrames();
+                }
+                ServerMetrics.answerBatches.increment();
+                replied.clear();
+                toFlush.clear();
+            }
+            draining.set(false);
+            // an answer may have been queued after the last poll
+        } while (!queue.isEmpty() && draining.compareAndSet(false, true));
+    }
+
+    private int take(Answer[] batch) {
+        int size = 0;
+        Answer answer;
+        while (size < batch.length && (answer = queue.poll()) != null) {
+            batch[size++] = answer;
+        }
+        return size;
+    }
+}
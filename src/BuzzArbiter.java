@@ -0,0 +1,79 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+// Decides who won the buzz-in as soon as the first valid buzz arrives.
+// Buzzes are judged by their receive timestamp; the first one wins and is acked at once,
+// later ones are negatively acked at once, and repeats from the same client are ignored.
+// Each GameRoom has its own arbiter.
+public class BuzzArbiter {
+    private static final AtomicLong serials = new AtomicLong(); // numbers polling phases across all rooms
+    private final Claim claim; // hands the answer to the winner and ends polling
+    private volatile Round round; // null while no polling phase is open
+
+    // State of one polling phase. Only the UDP listener thread mutates it after it is published.
+    private static class Round {
+        final int id;
+        final long serial; // unique across rooms, unlike id; sessions remember the last one they buzzed in
+        final long openedAt;
+        String winner;
+
+        Round(int id) {
+            this.id = id;
+            this.serial = serials.incrementAndGet();
+            this.openedAt = System.nanoTime();
+        }
+    }
+
+    // The room's side of a decision: false if the round's polling phase has already ended
+    public interface Claim {
+        boolean claim(int roundId, String clientID);
+    }
+
+    public BuzzArbiter(Claim claim) {
+        this.claim = claim;
+    }
+
+    // Starts accepting buzzes for a question
+    public void open(int roundId) {
+        round = new Round(roundId);
+    }
+
+    // Stops accepting buzzes; returns the winner's ClientID or null if nobody buzzed
+    public String close() {
+        Round closed = round;
+        round = null;
+        return closed == null ? null : closed.winner;
+    }
+
+    public boolean isDecided() {
+        Round current = round;
+        return current != null && current.winner != null;
+    }
+
+    // Judges one buzz; receivedAt is the System.nanoTime() taken when the packet was received
+    public void onBuzz(int roundId, Server.ClientHandler clientHandler, long receivedAt) {
+        String clientID = clientHandler.getclientID();
+        Round current = round;
+        if (current == null || current.id != roundId) {
+            ServerMetrics.staleBuzzes.increment();
+            return;
+        }
+        SessionRegistry.Session session = clientHandler.getSession();
+        if (session.lastBuzzRound == current.serial) {
+            ServerMetrics.duplicateBuzzes.increment(); // already judged this client
+            return;
+        }
+        session.lastBuzzRound = current.serial;
+
+        if (current.winner == null && claim.claim(roundId, clientID)) {
+            current.winner = clientID;
+            clientHandler.sendFrame(Protocol.signal(Protocol.ACK));
+            long decisionNanos = System.nanoTime() - receivedAt;
+            ServerMetrics.buzzToAck.record(decisionNanos);
+            Log.info("Sent 'ack' to ClientID=" + clientID + " (" + (receivedAt - current.openedAt) / 1_000_000
+                    + " ms into polling, decided in " + decisionNanos / 1000 + " us)");
+        } else {
+            clientHandler.sendFrame(Protocol.signal(Protocol.NACK));
+            Log.debug("Sent 'negative-ack' to ClientID=" + clientID);
+        }
+    }
+}
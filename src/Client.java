@@ -1,25 +1,44 @@
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import javax.swing.SwingUtilities;
 
 public class Client {
     private static List<String> SERVER_IPS;
     private static int SERVER_PORT;
     private static int UDP_PORT = 2000;
+    private static final int RECONNECT_ATTEMPTS = 5; // tries to resume the session after the connection drops
+    private static final int SYNC_PINGS = 5; // clock round trips measured on every connect
+    private static final int RESYNC_SECONDS = 60; // one more round trip this often, to follow clock drift
+    private static final long NEAR_BEST_MILLIS = 2; // a round trip this close to the best one also updates the offset
+    private static final int BUZZ_RESENDS = 3; // extra copies of a buzz sent while no ACK or NACK has come back
+    private static final int BUZZ_RESEND_MILLIS = 20; // delay before the first extra copy, doubled for each further one
     private static String DIRECTORY_PATH;
+    private static String ROOM; // game room to join on the server
 
     private Socket socket;
     private PrintWriter out;
-    private BufferedReader in;
     private ClientWindow clientWindow; // Reference to the ClientWindow
-    private QuestionHandler questionHandler;
-    private ObjectInputStream objectIn; // Used to receive objects from the server
+    private DataInputStream frameIn; // Used to receive protocol frames from the server
+    private volatile boolean killed; // the server ended this session, so it is not resumed
+    private volatile int currentRoundId; // round id of the question on screen, sent with every buzz
+    private volatile long sessionToken; // issued by the server, authenticates buzzes and reconnects
+    private volatile String clientID; // how the server shows this player
+    private volatile long clockOffset; // server clock minus local clock, in ms
+    private ScheduledExecutorService scheduler; // clock resyncs and buzz resends
+    private DatagramChannel buzzChannel; // connected to the server's buzz port once, used for every buzz
+    private volatile ByteBuffer buzzPacket; // buzz for the question on screen, encoded before the click
+    private volatile boolean buzzReceipt; // the server answered this round's buzz with ACK or NACK
+    private long bestRoundTrip = Long.MAX_VALUE; // round trip of the sample clockOffset came from; reader thread only
     
 
-    public Client(ClientWindow clientWindow, QuestionHandler questionHandler) {
+    public Client(ClientWindow clientWindow) {
         this.clientWindow = clientWindow;
-        this.questionHandler = questionHandler;
     }
 
     private static void loadClientConfig(String filePath) {
@@ -29,7 +48,9 @@ public class Client {
             SERVER_IPS = Arrays.asList(props.getProperty("server_ips").split(","));
             SERVER_PORT = Integer.parseInt(props.getProperty("port"));
             DIRECTORY_PATH = props.getProperty("directory_path");
-            System.out.println("Loaded client configuration: SERVER_IPS=" + SERVER_IPS + ", PORT=" + SERVER_PORT + ", DIRECTORY_PATH=" + DIRECTORY_PATH);
+            ROOM = props.getProperty("room", "lobby").trim();
+            Log.setLevel(props.getProperty("log_level", "INFO"));
+            System.out.println("Loaded client configuration: SERVER_IPS=" + SERVER_IPS + ", PORT=" + SERVER_PORT + ", DIRECTORY_PATH=" + DIRECTORY_PATH + ", ROOM=" + ROOM);
         } catch (IOException e) {
             System.err.println("Error reading client config file: " + e.getMessage());
             System.exit(1);
@@ -41,46 +62,136 @@ public class Client {
 
     public void connectToServer() {
         try {
-            // Establish a TCP connection to the server
-            socket = new Socket(SERVER_IPS.get(0), SERVER_PORT);
-            out = new PrintWriter(socket.getOutputStream(), true); // For sending strings
-            objectIn = new ObjectInputStream(socket.getInputStream()); // For receiving objects and strings
+            // the server address is resolved here once, not on every buzz
+            buzzChannel = DatagramChannel.open();
+            buzzChannel.connect(new InetSocketAddress(SERVER_IPS.get(0), UDP_PORT));
+            scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "client-timers");
+                thread.setDaemon(true);
+                return thread;
+            });
 
-            System.out.println("Connected to server.");
-            out.println("Client connected: " + socket.getLocalAddress().getHostAddress() + ":" + socket.getLocalPort());
+            open();
+            out.println(Protocol.joinLine(ROOM)); // pick the game room before the game starts
 
             // Start a thread to listen for server responses
-            new Thread(() -> {
-                try {
-                    while (true) {
-                        // Read the incoming object
-                        Object receivedObject = objectIn.readObject();
-                        if (receivedObject instanceof String) {
-                            System.out.println("Received string from server: " + receivedObject); // Debug log
-                            handleServerResponse((String) receivedObject);
-                        } else if (receivedObject instanceof Question) {
-                            handleReceivedQuestion((Question) receivedObject);
-                        } else {
-                            System.err.println("Unknown object type received: " + receivedObject.getClass().getName());
+            new Thread(this::readFrames).start();
+
+            scheduler.scheduleAtFixedRate(this::ping, RESYNC_SECONDS, RESYNC_SECONDS, TimeUnit.SECONDS);
+        } catch (IOException e) {
+            System.err.println("Error connecting to server: " + e.getMessage());
+        }
+    }
+
+    // Establishes a TCP connection to the server
+    private void open() throws IOException {
+        socket = new Socket(SERVER_IPS.get(0), SERVER_PORT);
+        out = new PrintWriter(socket.getOutputStream(), true); // For sending strings
+        frameIn = new DataInputStream(new BufferedInputStream(socket.getInputStream())); // For receiving protocol frames
+
+        System.out.println("Connected to server.");
+        out.println("Client connected: " + socket.getLocalAddress().getHostAddress() + ":" + socket.getLocalPort());
+
+        // the route may have changed, so the clock offset is measured afresh
+        bestRoundTrip = Long.MAX_VALUE;
+        for (int i = 0; i < SYNC_PINGS; i++) {
+            ping();
+        }
+    }
+
+    // The clock PHASE deadlines are converted to: monotonic milliseconds
+    static long localMillis() {
+        return System.nanoTime() / 1_000_000;
+    }
+
+    private void ping() {
+        PrintWriter writer = out;
+        if (writer != null) {
+            writer.println(Protocol.pingLine(localMillis()));
+        }
+    }
+
+    // Estimates the clock offset NTP-style: the server read its clock about half a round trip
+    // after the ping left. The shortest round trip has the least queuing in it, so its sample is
+    // kept; a later sample replaces it only if its round trip is nearly as short.
+    private void onPong(Protocol.Frame frame) {
+        long now = localMillis();
+        long roundTrip = now - frame.clientTime;
+        if (roundTrip <= bestRoundTrip + NEAR_BEST_MILLIS) {
+            bestRoundTrip = Math.min(bestRoundTrip, roundTrip);
+            clockOffset = frame.serverTime - (frame.clientTime + now) / 2;
+            Log.debug("Clock offset " + clockOffset + " ms (round trip " + roundTrip + " ms)");
+        }
+    }
+
+    // Handles server frames until the connection is gone for good
+    private void readFrames() {
+        while (true) {
+            try {
+                while (true) {
+                    // Read the incoming frame
+                    Protocol.Frame frame = readFrame();
+                    if (frame.opcode == Protocol.QUESTION) {
+                        currentRoundId = frame.value;
+                        buzzReceipt = false;
+                        prepareBuzz();
+                        handleReceivedQuestion(frame.question);
+                    } else {
+                        if (Log.isDebugEnabled()) {
+                            Log.debug("Received " + Protocol.name(frame.opcode) + " from server");
                         }
+                        handleServerResponse(frame);
                     }
-                } catch (IOException e) {
-                    System.err.println("Error reading server response (IO): " + e.getMessage());
-                } catch (ClassNotFoundException e) {
-                    System.err.println("Error reading server response (ClassNotFound): " + e.getMessage());
-                } catch (Exception e) {
-                    System.err.println("Unexpected error in response thread: " + e.getMessage());
                 }
-            }).start();
-        } catch (IOException e) {
-            System.err.println("Error connecting to server: " + e.getMessage());
+            } catch (IOException e) {
+                Log.error("Error reading server response (IO): " + e.getMessage());
+            } catch (Exception e) {
+                Log.error("Unexpected error in response thread: " + e.getMessage());
+                return;
+            }
+            if (!reconnect()) {
+                return;
+            }
+        }
+    }
+
+    // A frame that does not decode means the stream is out of step with the server,
+    // so the connection is dropped and handled like a broken one
+    private Protocol.Frame readFrame() throws IOException {
+        try {
+            return Protocol.readFrame(frameIn);
+        } catch (RuntimeException e) {
+            socket.close();
+            throw new IOException("Malformed frame from server: " + e, e);
+        }
+    }
+
+    // Reconnects and resumes the session, so the player keeps their score and place in the game
+    private boolean reconnect() {
+        if (sessionToken == 0 || killed) {
+            return false;
+        }
+        for (int attempt = 1; attempt <= RECONNECT_ATTEMPTS; attempt++) {
+            try {
+                Thread.sleep(500L * attempt);
+                open();
+                out.println(Protocol.resumeLine(sessionToken));
+                Log.info("Reconnected, resuming session of " + clientID);
+                return true;
+            } catch (IOException e) {
+                Log.warn("Reconnect attempt " + attempt + " failed: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
         }
+        return false;
     }
 
     //takes accepted question from server and passes it to ClientWindow logic
     public void handleReceivedQuestion(Question q) {
         SwingUtilities.invokeLater(() -> {
-            System.out.println("Question received");
+            Log.debug("Question received");
             clientWindow.showQuestion(q); // Delegate question display and timer handling to ClientWindow
         });
     }
@@ -89,66 +200,123 @@ public class Client {
     public void submitAnswer(String answer) {
         try {
             if (out != null) {
-                out.println("ANSWER:" + answer); // Send the answer to the server
-                System.out.println("Submitted answer: " + answer);
+                out.println(Protocol.answerLine(currentRoundId, answer)); // Tag the answer with the question it is for
+                Log.debug("Submitted answer: " + answer);
             }
         } catch (Exception e) {
-            System.err.println("Error submitting answer: " + e.getMessage());
+            Log.error("Error submitting answer: " + e.getMessage());
         }
     }
 
-    public void sendUDP() {
-        try {
-            DatagramSocket udpSocket = new DatagramSocket();
-
-            // Use only the IP address as the ClientID
-
-            String clientID = socket.getLocalAddress().getHostAddress();
-            byte[] buffer = clientID.getBytes(); // Send only the ClientID
+    // Encodes the buzz for the current round and session ahead of the click
+    private void prepareBuzz() {
+        buzzPacket = ByteBuffer.wrap(Protocol.encodeBuzz(currentRoundId, sessionToken)).asReadOnlyBuffer();
+    }
 
-            InetAddress serverAddress = InetAddress.getByName(SERVER_IPS.get(0));
-            DatagramPacket packet = new DatagramPacket(buffer, buffer.length, serverAddress, UDP_PORT);
-            udpSocket.send(packet);
+    // Buzzes in: the pre-encoded packet goes out on the already connected channel, so a click
+    // costs one send. UDP may drop it, so copies follow at growing gaps until the ACK or NACK
+    // arrives; the arbiter only judges the first copy that reaches it.
+    public void sendUDP() {
+        ByteBuffer packet = buzzPacket;
+        if (packet == null || buzzChannel == null) {
+            return; // no question yet
+        }
+        sendBuzz(packet);
+        resendBuzz(packet, currentRoundId, 1, BUZZ_RESEND_MILLIS);
+        if (Log.isDebugEnabled()) {
+            Log.debug("UDP packet sent: ClientID=" + clientID + ", Round=" + currentRoundId);
+        }
+    }
 
-            System.out.println("UDP packet sent: ClientID=" + clientID);
-            udpSocket.close();
+    private void sendBuzz(ByteBuffer packet) {
+        try {
+            buzzChannel.write(packet.duplicate());
         } catch (IOException e) {
-            System.err.println("Error sending UDP packet: " + e.getMessage());
-        } catch (Exception e) {
-            System.err.println("Unexpected error in sendUDP: " + e.getMessage());
+            Log.error("Error sending UDP packet: " + e.getMessage());
+        }
+    }
+
+    private void resendBuzz(ByteBuffer packet, int roundId, int copy, long delayMillis) {
+        if (copy > BUZZ_RESENDS) {
+            return;
         }
+        scheduler.schedule(() -> {
+            if (buzzReceipt || roundId != currentRoundId) {
+                return; // answered, or the question moved on
+            }
+            sendBuzz(packet);
+            resendBuzz(packet, roundId, copy + 1, delayMillis * 2);
+        }, delayMillis, TimeUnit.MILLISECONDS);
     }
 
-    private void handleServerResponse(String response) {
-        if (response.startsWith("TIMER:")) {
-            // Extract the remaining time from the message
-            int remainingTime = Integer.parseInt(response.substring(6).trim());
-            clientWindow.updateTimer(remainingTime); // Update the timer in the ClientWindow
-        } else if (response.equals("ack")) {
-            clientWindow.onAckReceived(true);
-            System.out.println("Received ack from server.");
-        } else if (response.equals("negative-ack")) {
-            clientWindow.onAckReceived(false);
-            System.out.println("Received negative-ack from server.");
-        } else if (response.equals("game-started!")) {
-            clientWindow.enablePollButton();
-            System.out.println("Game started! Poll button enabled.");
+    private void handleServerResponse(Protocol.Frame frame) {
+        switch (frame.opcode) {
+            case Protocol.PHASE:
+                if (frame.value != currentRoundId) {
+                    break; // a late phase of another question
+                }
+                // the window counts down to the deadline on its own; nothing more is sent during the phase
+                clientWindow.startPhase(frame.phase, frame.serverTime - clockOffset);
+                break;
+            case Protocol.PONG:
+                onPong(frame);
+                break;
+            case Protocol.ACK:
+                buzzReceipt = true;
+                clientWindow.onAckReceived(true);
+                Log.debug("Received ack from server.");
+                break;
+            case Protocol.NACK:
+                buzzReceipt = true;
+                clientWindow.onAckReceived(false);
+                Log.debug("Received negative-ack from server.");
+                break;
+            case Protocol.GAME_STARTED:
+                clientWindow.enablePollButton();
+                Log.info("Game started! Poll button enabled.");
+                break;
+
+            //handle score
+            case Protocol.CORRECT:
+                clientWindow.updateScore(10);
+                break;
+            case Protocol.INCORRECT:
+                clientWindow.updateScore(-10);
+                break;
+            case Protocol.TIMEOUT:
+                clientWindow.updateScore(-20);
+                break;
+            case Protocol.REJECTED:
+                Log.info("Answer not accepted by the server.");
+                break;
+
+            case Protocol.SESSION:
+                sessionToken = frame.token;
+                clientID = frame.clientID;
+                prepareBuzz();
+                Log.info("Playing as " + clientID);
+                break;
+            case Protocol.KILL:
+                killed = true;
+                break;
 
-        //handle score
-        } else if (response.equals("CORRECT")) {
-            clientWindow.updateScore(10);
-        } else if (response.equals("INCORRECT")) {
-            clientWindow.updateScore(-10);
-        } else if (response.equals("TIMEOUT")) {
-            clientWindow.updateScore(-20);
+            //handle rankings
+            case Protocol.LEADERBOARD:
+                clientWindow.showLeaderboard(frame.standings, frame.value);
+                break;
+            case Protocol.RANK:
+                clientWindow.showRank(frame.standings[0], frame.value);
+                break;
+            default:
+                break;
         }
     }
 
     public void closeConnection() {
         try {
-            if (in != null) in.close();
             if (out != null) out.close();
             if (socket != null) socket.close();
+            if (buzzChannel != null) buzzChannel.close();
             System.out.println("Connection closed.");
         } catch (IOException e) {
             System.err.println("Error closing connection: " + e.getMessage());
@@ -164,8 +332,7 @@ public class Client {
 
         // Create the ClientWindow and pass it to the Client
         ClientWindow window = new ClientWindow();
-        QuestionHandler questionHandler = new QuestionHandler();
-        Client client = new Client(window, questionHandler);
+        Client client = new Client(window); // questions arrive in QUESTION frames, so the client never loads the bank
         window.setClient(client); // Pass the client to the ClientWindow
 
         client.connectToServer();
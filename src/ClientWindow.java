@@ -4,6 +4,7 @@ import java.awt.event.ActionListener;
 import javax.swing.*;
 
 public class ClientWindow implements ActionListener {
+    private static final int COUNTDOWN_TICK_MILLIS = 16; // about one display frame
     private Client client;
     private JButton poll;
     private JButton submit;
@@ -12,6 +13,8 @@ public class ClientWindow implements ActionListener {
     private JLabel question;
     private JLabel timer;
     private JLabel score;
+    private JLabel rank;
+    private JLabel leaderboard;
     private JFrame window;
 
     private int scoreCount = 0;  // Track the score
@@ -19,6 +22,9 @@ public class ClientWindow implements ActionListener {
     private boolean pollPhase = true;  // Flag to track if we're in the poll phase
     private boolean questionActive = false;  // Flag to track if a question is active (not yet answered)
     private boolean ackReceived = false;  // Flag to track if ack is received
+    private final Timer countdown = new Timer(COUNTDOWN_TICK_MILLIS, e -> showRemaining()); // runs on the EDT, late ticks are coalesced
+    private long phaseDeadline; // Client.localMillis() at which the current phase ends
+    private int shownSeconds = -1; // seconds on the timer label
 
     public ClientWindow() {
         JOptionPane.showMessageDialog(window, "This is a trivia game");
@@ -46,6 +52,15 @@ public class ClientWindow implements ActionListener {
         score.setBounds(50, 250, 100, 20);
         window.add(score);
 
+        rank = new JLabel("RANK");
+        rank.setBounds(50, 270, 300, 20);
+        window.add(rank);
+
+        leaderboard = new JLabel(); // top players, refreshed after every question
+        leaderboard.setVerticalAlignment(SwingConstants.TOP);
+        leaderboard.setBounds(10, 330, 370, 190);
+        window.add(leaderboard);
+
         poll = new JButton("Poll");
         poll.setBounds(10, 300, 100, 20);
         poll.addActionListener(this);
@@ -56,8 +71,8 @@ public class ClientWindow implements ActionListener {
         submit.addActionListener(this);
         window.add(submit);
 
-        window.setSize(400, 400);
-        window.setBounds(50, 50, 400, 400);
+        window.setSize(400, 560);
+        window.setBounds(50, 50, 400, 560);
         window.setLayout(null);
         window.setVisible(true);
         window.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -158,6 +173,29 @@ public class ClientWindow implements ActionListener {
         SwingUtilities.invokeLater(() -> score.setText("SCORE: " + scoreCount));
     }
 
+    public void showLeaderboard(Protocol.Standing[] top, int players) {
+        StringBuilder html = new StringBuilder("<html>Leaderboard (" + players + " players)<br>");
+        for (Protocol.Standing standing : top) {
+            html.append(standing.rank).append(". ").append(escape(standing.clientID))
+                    .append(" - ").append(standing.score).append("<br>");
+        }
+        String text = html.append("</html>").toString();
+        SwingUtilities.invokeLater(() -> leaderboard.setText(text));
+    }
+
+    // The server's ranking is authoritative, so the score display is corrected to it as well
+    public void showRank(Protocol.Standing standing, int players) {
+        scoreCount = standing.score;
+        SwingUtilities.invokeLater(() -> {
+            rank.setText("RANK: " + standing.rank + " of " + players);
+            score.setText("SCORE: " + standing.score);
+        });
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
     private void enableOptions(boolean enable) {
         for (int i = 0; i < options.length; i++) {
             options[i].setEnabled(enable);
@@ -187,28 +225,43 @@ public class ClientWindow implements ActionListener {
         });
     }
 
-    public void updateTimer(int remainingTime) {
+    // Starts counting down a phase the server announced; deadline is on the local clock
+    public void startPhase(byte phase, long deadline) {
         SwingUtilities.invokeLater(() -> {
+            phaseDeadline = deadline;
+            shownSeconds = -1;
+            if (phase == Protocol.PHASE_POLLING) {
+                pollPhase = true;
+            } else if (pollPhase) {
+                // Poll phase ends - enable Submit button and options if ack was positive
+                pollPhase = false;  // End Poll phase
+                if (ackReceived) {
+                    submit.setEnabled(true);  // Enable Submit button after Poll phase ends if ack is positive
+                    enableOptions(true);  // Enable options after Poll phase ends if ack is positive
+                }
+                // Disable Poll button after Poll phase ends
+                poll.setEnabled(false);  // Disable Poll button
+            }
+            showRemaining();
+            countdown.restart();
+        });
+    }
+
+    // Redraws the countdown from the deadline, so every window shows the same second at the same time
+    private void showRemaining() {
+        long left = phaseDeadline - Client.localMillis();
+        int remainingTime = (int) Math.max(0, (left + 999) / 1000);
+        if (remainingTime != shownSeconds) {
+            shownSeconds = remainingTime;
             if (remainingTime < 6) {
                 timer.setForeground(Color.red); // Change color to red for the last 5 seconds
             } else {
                 timer.setForeground(Color.black);
             }
             timer.setText(String.valueOf(remainingTime)); // Update the timer display
-
-            // Transition to next phase if timer runs out
-            if (remainingTime == 0) {
-                if (pollPhase) {
-                    // Poll phase ends - enable Submit button and options if ack was positive
-                    pollPhase = false;  // End Poll phase
-                    if (ackReceived) {
-                        submit.setEnabled(true);  // Enable Submit button after Poll phase ends if ack is positive
-                        enableOptions(true);  // Enable options after Poll phase ends if ack is positive
-                    }
-                    // Disable Poll button after Poll phase ends
-                    poll.setEnabled(false);  // Disable Poll button
-                }
-            }
-        });
+        }
+        if (left <= 0) {
+            countdown.stop(); // the next PHASE frame starts it again
+        }
     }
 }
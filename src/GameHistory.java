@@ -0,0 +1,151 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Results of finished games, appended to one file and queried by the HISTORY console command.
+// The file is only ever appended to; an in-memory index of record offsets per room is rebuilt
+// by one scan on startup, so a query reads just the records it returns.
+//
+// Record: [int length][long ended at][utf room][int questions][long duration ms][int players]
+//         [int standings] standings x ([int rank][int score][utf client id])
+public class GameHistory {
+    private static final String HISTORY_FILE = "games.history";
+
+    private final RandomAccessFile file;
+    private final List<Long> offsets = new ArrayList<>(); // every game, oldest first
+    private final Map<String, List<Long>> offsetsByRoom = new HashMap<>();
+
+    // One finished game
+    public static class Game {
+        public final long endedAt;
+        public final String room;
+        public final int questions;
+        public final long durationMillis;
+        public final int players;
+        public final List<Protocol.Standing> standings;
+
+        public Game(long endedAt, String room, int questions, long durationMillis, int players, List<Protocol.Standing> standings) {
+            this.endedAt = endedAt;
+            this.room = room;
+            this.questions = questions;
+            this.durationMillis = durationMillis;
+            this.players = players;
+            this.standings = standings;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(endedAt)))
+                    .append(" [").append(room).append("] ")
+                    .append(questions).append(" questions in ").append(durationMillis / 1000).append(" s, ")
+                    .append(players).append(" players:");
+            for (Protocol.Standing standing : standings) {
+                sb.append(' ').append(standing.rank).append(". ").append(standing.clientID).append(" (").append(standing.score).append(')');
+            }
+            return sb.toString();
+        }
+    }
+
+    public GameHistory(String dataDir) throws IOException {
+        Files.createDirectories(Path.of(dataDir));
+        file = new RandomAccessFile(Path.of(dataDir, HISTORY_FILE).toFile(), "rw");
+        index();
+    }
+
+    // Finds every complete record; a record cut short by a crash is dropped
+    private void index() throws IOException {
+        long offset = 0;
+        long end = file.length();
+        while (offset + 4 <= end) {
+            file.seek(offset);
+            int length = file.readInt();
+            if (length <= 0 || offset + 4 + length > end) {
+                break;
+            }
+            file.readLong();
+            addToIndex(offset, file.readUTF());
+            offset += 4 + length;
+        }
+        if (offset < end) {
+            Log.warn("Game history: discarding " + (end - offset) + " bytes of an incomplete record");
+            file.setLength(offset);
+        }
+        Log.info("Game history: " + offsets.size() + " finished games in " + offsetsByRoom.size() + " rooms");
+    }
+
+    private void addToIndex(long offset, String room) {
+        offsets.add(offset);
+        offsetsByRoom.computeIfAbsent(room, k -> new ArrayList<>()).add(offset);
+    }
+
+    // Appends a finished game and syncs it to disk
+    public synchronized void record(Game game) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0); // length, filled in below
+        out.writeLong(game.endedAt);
+        out.writeUTF(game.room);
+        out.writeInt(game.questions);
+        out.writeLong(game.durationMillis);
+        out.writeInt(game.players);
+        out.writeInt(game.standings.size());
+        for (Protocol.Standing standing : game.standings) {
+            out.writeInt(standing.rank);
+            out.writeInt(standing.score);
+            out.writeUTF(standing.clientID);
+        }
+        byte[] record = bytes.toByteArray();
+        int length = record.length - 4;
+        record[0] = (byte) (length >>> 24);
+        record[1] = (byte) (length >>> 16);
+        record[2] = (byte) (length >>> 8);
+        record[3] = (byte) length;
+
+        long offset = file.length();
+        file.seek(offset);
+        file.write(record);
+        file.getFD().sync();
+        addToIndex(offset, game.room);
+    }
+
+    // The latest limit games, newest first; room null for every room
+    public synchronized List<Game> latest(String room, int limit) throws IOException {
+        List<Long> candidates = room == null ? offsets : offsetsByRoom.getOrDefault(room, List.of());
+        List<Game> games = new ArrayList<>(Math.min(limit, candidates.size()));
+        for (int i = candidates.size() - 1; i >= 0 && games.size() < limit; i--) {
+            games.add(read(candidates.get(i)));
+        }
+        return games;
+    }
+
+    public synchronized int size() {
+        return offsets.size();
+    }
+
+    private Game read(long offset) throws IOException {
+        file.seek(offset + 4);
+        long endedAt = file.readLong();
+        String room = file.readUTF();
+        int questions = file.readInt();
+        long durationMillis = file.readLong();
+        int players = file.readInt();
+        int count = file.readInt();
+        List<Protocol.Standing> standings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int rank = file.readInt();
+            int score = file.readInt();
+            standings.add(new Protocol.Standing(rank, score, file.readUTF()));
+        }
+        return new Game(endedAt, room, questions, durationMillis, players, standings);
+    }
+}
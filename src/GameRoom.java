@@ -0,0 +1,422 @@
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+// One game: its own players, scores, question deck, buzz arbiter and phase timers.
+// Many rooms share the server's phase scheduler and I/O threads; a room holds no thread
+// of its own and only runs when one of its timers fires.
+// Where the current question stands is one immutable RoundState, moved on by compare-and-set:
+// the buzz winner, the answer and the end of a phase can race from different threads, and
+// exactly one of them wins each transition.
+public final class GameRoom {
+    private final String name;
+    private final ConcurrentHashMap<String, Server.ClientHandler> players = new ConcurrentHashMap<>();
+    private static final int LEADERBOARD_SIZE = 10; // players shown to everyone after each question
+    private final Leaderboard leaderboard = new Leaderboard();
+    private final BuzzArbiter buzzArbiter = new BuzzArbiter(this::claimAnswer); // decides who buzzed first
+    private final AtomicReference<RoundState> state = new AtomicReference<>(RoundState.IDLE);
+    private final AnswerInbox answers; // judges answers off the I/O threads
+    private QuestionHandler questionHandler;
+    private volatile ByteBuffer currentFrame; // QUESTION frame of the question being played
+    private volatile boolean gameState; // true while a game is running
+    private int roundId = 0; // incremented for every question
+    private volatile PhaseTimer phaseTimer; // deadline of the current phase, null between questions
+    private volatile long phaseSentAt; // System.nanoTime() of the latest PHASE broadcast, for the fan-out metric
+    private long gameStartedAt; // wall clock time the running game started
+    private int questionsPlayed; // questions put in play in the running game
+    private final Set<String> departed = new HashSet<>(); // expired players ranked until the running game ends; guarded by this
+
+    public GameRoom(String name) {
+        this.name = name;
+        // pick up scores from before a restart, or from before the room was last closed,
+        // of players whose session can still be resumed
+        ScoreJournal journal = Server.getScoreJournal();
+        if (journal != null) {
+            journal.scores(name).forEach((clientID, score) -> {
+                if (Server.hasSession(clientID)) {
+                    leaderboard.addScore(clientID, score);
+                }
+            });
+        }
+        answers = new AnswerInbox(this); // last: the inbox may call back into a fully built room
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    long getPhaseSentAt() {
+        return phaseSentAt;
+    }
+
+    public void join(Server.ClientHandler clientHandler) {
+        players.put(clientHandler.getclientID(), clientHandler);
+        leaderboard.register(clientHandler.getclientID());
+        Log.debug("ClientID=" + clientHandler.getclientID() + " joined room " + name);
+    }
+
+    public void leave(Server.ClientHandler clientHandler) {
+        players.remove(clientHandler.getclientID(), clientHandler);
+        if (players.isEmpty() && gameState) {
+            endAbandonedGame();
+        }
+    }
+
+    // Ends a running game once its last player has left, rather than dealing the rest of the deck to nobody
+    private synchronized void endAbandonedGame() {
+        if (!gameState || !players.isEmpty()) {
+            return; // already over, or someone joined in the meantime
+        }
+        Log.info("[" + name + "] Last player left; ending the game.");
+        PhaseTimer timer = phaseTimer;
+        phaseTimer = null; // a timer that still fires is stale from here on
+        if (timer != null) {
+            timer.cancel();
+        }
+        gameState = false;
+        nextQuestion(); // goes straight to Game Over
+    }
+
+    // Drops a player from the rankings unless they are playing here. During a game they keep
+    // their place until Game Over, so the final standings and the game's history include them.
+    public synchronized void forget(String clientID) {
+        if (players.containsKey(clientID)) {
+            return;
+        }
+        if (gameState) {
+            departed.add(clientID);
+        } else {
+            leaderboard.remove(clientID);
+        }
+    }
+
+    // Brings a player who resumed their session up to date: their score, and the question
+    // and phase in play if a game is running
+    public void catchUp(Server.ClientHandler clientHandler) {
+        String clientID = clientHandler.getclientID();
+        clientHandler.sendFrame(Protocol.encodeRank(leaderboard.standing(clientID), leaderboard.size()));
+        ByteBuffer frame = currentFrame;
+        PhaseTimer timer = phaseTimer;
+        RoundState current = state.get();
+        if (!gameState || frame == null || timer == null || current.phase == Phase.IDLE) {
+            return;
+        }
+        clientHandler.sendFrame(Protocol.signal(Protocol.GAME_STARTED));
+        clientHandler.sendFrame(frame.duplicate());
+        ByteBuffer phaseFrame = timer.frame();
+        if (phaseFrame != null) {
+            clientHandler.sendFrame(phaseFrame.duplicate()); // carries the deadline, so it is still exact
+        }
+        if (current.phase == Phase.ANSWERING && clientID.equals(current.answerer)) {
+            clientHandler.sendFrame(Protocol.signal(Protocol.ACK)); // still their turn to answer
+        }
+    }
+
+    public boolean isEmpty() {
+        return players.isEmpty();
+    }
+
+    public int playerCount() {
+        return players.size();
+    }
+
+    public Collection<Server.ClientHandler> getPlayers() {
+        return players.values();
+    }
+
+    public boolean getGameState() {
+        return gameState;
+    }
+
+    // Question being played, null between games
+    public Question getCurrentQuestion() {
+        return state.get().question;
+    }
+
+    public BuzzArbiter getBuzzArbiter() {
+        return buzzArbiter;
+    }
+
+    public AnswerInbox getAnswers() {
+        return answers;
+    }
+
+    public Leaderboard getLeaderboard() {
+        return leaderboard;
+    }
+
+    // Adds points to a player's score in this room and journals the change
+    public void addScore(String clientID, int points) {
+        leaderboard.addScore(clientID, points);
+        ScoreJournal journal = Server.getScoreJournal();
+        if (journal != null) {
+            journal.append(name, clientID, points);
+        }
+    }
+
+    // Starts a game on a deck of the given category (or QuestionBank.ANY_CATEGORY) and
+    // difficulty (0 for any); false if one is already running
+    public synchronized boolean start(String category, int difficulty) {
+        if (gameState) {
+            return false;
+        }
+        gameState = true;
+        gameStartedAt = System.currentTimeMillis();
+        questionsPlayed = 0;
+        questionHandler = Server.newDeck(category, difficulty); // each game gets its own cursor over the shared bank
+
+        // game begins
+        Log.info("[" + name + "] Game started! (" + questionHandler.size() + " questions, category=" + category
+                + ", difficulty=" + difficulty + ", seed=" + questionHandler.getSeed() + ")");
+
+        //send message to all clients that game has started
+        broadcast(Protocol.signal(Protocol.GAME_STARTED));
+        nextQuestion();
+        return true;
+    }
+
+    // Sends one encoded frame to every player in the room. The frame is encoded once and shared
+    // read-only; each player only gets its own position over the same bytes, queued for its writer.
+    public void broadcast(ByteBuffer frame) {
+        ByteBuffer shared = frame.asReadOnlyBuffer();
+        for (Server.ClientHandler clientHandler : players.values()) {
+            clientHandler.sendFrame(shared.duplicate());
+        }
+    }
+
+    // Puts the next question in play, or ends the game when the deck is empty
+    private synchronized void nextQuestion() {
+        if (!gameState || questionHandler.outOfQuestions()) {
+            state.set(RoundState.IDLE);
+            currentFrame = null;
+            gameState = false;
+            Log.info("[" + name + "] Game Over!");
+            long now = System.currentTimeMillis();
+            Server.recordGame(new GameHistory.Game(now, name, questionsPlayed, now - gameStartedAt,
+                    leaderboard.size(), leaderboard.top(LEADERBOARD_SIZE)));
+            for (String clientID : departed) {
+                leaderboard.remove(clientID);
+            }
+            departed.clear();
+            Server.dropIfIdle(this); // nobody may be left to leave it
+            return;
+        }
+        // decoded and encoded once for every room, only the round id is patched in
+        QuestionCache.Entry cached = Server.getQuestionCache().get(questionHandler.getBank(), questionHandler.getCurrentQuestionId());
+        roundId++;
+        questionsPlayed++;
+        // a new question starts with nobody buzzed in and nothing answered
+        state.set(new RoundState(Phase.POLLING, roundId, cached.question, null));
+        // the polling timer and the arbiter are ready before anyone sees the question, so the
+        // first buzz always finds this round's timer to end polling early with
+        PhaseTimer polling = new PhaseTimer(Phase.POLLING, Server.getPollingSeconds());
+        phaseTimer = polling;
+        buzzArbiter.open(roundId); // start accepting buzzes for this question
+        //sends the question under the deck's cursor to all clients, after each question the cursor moves on
+        Log.info(cached.text);
+        ByteBuffer frame = Protocol.withRoundId(cached.frame, roundId).asReadOnlyBuffer();
+        currentFrame = frame;
+        broadcast(frame);
+
+        Log.info("[" + name + "] Polling phase started...");
+        polling.start();
+    }
+
+    private void startPhase(Phase phase, int seconds) {
+        phaseTimer = new PhaseTimer(phase, seconds);
+        phaseTimer.start();
+    }
+
+    // Called by the arbiter for the first buzz of a round: hands that player the answer and ends
+    // polling early, since there is nothing left to poll for. False if polling already ended.
+    private boolean claimAnswer(int buzzRoundId, String clientID) {
+        RoundState current = state.get();
+        if (current.phase != Phase.POLLING || current.roundId != buzzRoundId
+                || !state.compareAndSet(current, current.with(Phase.ANSWERING, clientID))) {
+            return false;
+        }
+        PhaseTimer timer = phaseTimer;
+        if (timer != null && timer.phase == Phase.POLLING) {
+            Server.getPhaseScheduler().execute(timer::finish);
+        }
+        return true;
+    }
+
+    // Scores an answer tagged with the round id of its question and returns the verdict opcode.
+    // Only the player who won the buzz may answer, only while the answering phase of that
+    // question is open, and only once; anything else is REJECTED. Called by the AnswerInbox.
+    byte judgeAnswer(String clientID, int answerRoundId, String answer) {
+        RoundState current = state.get();
+        if (current.phase != Phase.ANSWERING || current.roundId != answerRoundId || !clientID.equals(current.answerer)) {
+            ServerMetrics.rejectedAnswers.increment();
+            if (Log.isDebugEnabled()) {
+                Log.debug("[" + name + "] Rejected answer from " + clientID + " for round " + answerRoundId
+                        + " (round " + current.roundId + " is " + current.phase + ")");
+            }
+            return Protocol.REJECTED;
+        }
+        if (!state.compareAndSet(current, current.with(Phase.ANSWERED, clientID))) {
+            ServerMetrics.rejectedAnswers.increment(); // a second answer, or the phase just ended
+            return Protocol.REJECTED;
+        }
+        if (answer.equals(current.question.getCorrectAnswer())) {
+            Log.debug("Client " + clientID + " answered correctly.");
+            addScore(clientID, 10); // Add 10 points for a correct answer
+            return Protocol.CORRECT;
+        }
+        Log.debug("Client " + clientID + " answered incorrectly.");
+        addScore(clientID, -10); // Deduct 10 points for an incorrect answer
+        return Protocol.INCORRECT;
+    }
+
+    // Moves the game along when a phase's countdown runs out (or polling is decided early)
+    private synchronized void onPhaseEnd(PhaseTimer timer) {
+        if (timer != phaseTimer) {
+            return; // a stale timer from an earlier phase
+        }
+        if (timer.phase == Phase.POLLING) {
+            Log.info("[" + name + "] Polling phase ended.");
+            buzzArbiter.close();
+            // with no winner, close polling so a late buzz can no longer claim the answer
+            RoundState current = state.get();
+            if (current.phase == Phase.POLLING && state.compareAndSet(current, current.with(Phase.ANSWERING, null))) {
+                Log.info("[" + name + "] Nobody buzzed in.");
+            }
+
+            Log.info("[" + name + "] Answering phase started...");
+            startPhase(Phase.ANSWERING, Server.getAnsweringSeconds());
+            return;
+        }
+
+        Log.info("[" + name + "] Answering phase ended.");
+        phaseTimer = null;
+        // Close the question; if the buzz winner has not answered by now, they time out
+        RoundState current = state.getAndUpdate(s -> s.with(Phase.CLOSED, s.answerer));
+        if (current.phase == Phase.ANSWERING && current.answerer != null) {
+            Server.ClientHandler answerer = players.get(current.answerer);
+            if (answerer != null) {
+                answerer.handleTimeout();
+            } else {
+                addScore(current.answerer, -20); // timed out while disconnected
+            }
+        }
+        publishLeaderboard();
+
+        // Advance past the used question so the next can be displayed
+        questionHandler.nextQuestion();
+        Log.info("[" + name + "] Moving to the next question...");
+        nextQuestion();
+    }
+
+    // Shows everyone the top players, and each player their own rank
+    private void publishLeaderboard() {
+        List<Protocol.Standing> top = leaderboard.top(LEADERBOARD_SIZE);
+        int ranked = leaderboard.size();
+        StringBuilder sb = new StringBuilder("[" + name + "] Leaderboard (" + ranked + " players):");
+        for (Protocol.Standing standing : top) {
+            sb.append(' ').append(standing.rank).append(". ").append(standing.clientID).append(" (").append(standing.score).append(')');
+        }
+        Log.info(sb.toString());
+        broadcast(Protocol.encodeLeaderboard(top, ranked));
+        for (Server.ClientHandler clientHandler : players.values()) {
+            clientHandler.sendFrame(Protocol.encodeRank(leaderboard.standing(clientHandler.getclientID()), ranked));
+        }
+    }
+
+    // IDLE between games; each question goes POLLING -> ANSWERING -> (ANSWERED) -> CLOSED
+    enum Phase { IDLE, POLLING, ANSWERING, ANSWERED, CLOSED }
+
+    // One question's progress; replaced as a whole on every transition
+    private static final class RoundState {
+        static final RoundState IDLE = new RoundState(Phase.IDLE, 0, null, null);
+
+        final Phase phase;
+        final int roundId;
+        final Question question;
+        final String answerer; // ClientID that won the buzz, null if nobody did
+
+        RoundState(Phase phase, int roundId, Question question, String answerer) {
+            this.phase = phase;
+            this.roundId = roundId;
+            this.question = question;
+            this.answerer = answerer;
+        }
+
+        RoundState with(Phase next, String nextAnswerer) {
+            return new RoundState(next, roundId, question, nextAnswerer);
+        }
+    }
+
+    // Deadline of one phase. Players get the deadline once, in a PHASE frame, and count down on
+    // their own clocks; the shared phase scheduler ends the phase when the deadline passes, so no
+    // thread sleeps per room and nothing is sent while the phase runs
+    private class PhaseTimer implements Runnable {
+        private final Phase phase;
+        private final int seconds;
+        private final AtomicBoolean finished = new AtomicBoolean(false);
+        private volatile ByteBuffer frame; // PHASE frame broadcast at the start, also sent by catchUp
+        private ScheduledFuture<?> end;
+
+        PhaseTimer(Phase phase, int seconds) {
+            this.phase = phase;
+            this.seconds = seconds;
+        }
+
+        // Announces the deadline and schedules the end, unless the phase already ended early
+        synchronized void start() {
+            if (finished.get()) {
+                return; // polling was decided before it was announced
+            }
+            long deadline = Server.clockMillis() + seconds * 1000L;
+            byte wirePhase = phase == Phase.POLLING ? Protocol.PHASE_POLLING : Protocol.PHASE_ANSWERING;
+            frame = Protocol.encodePhase(wirePhase, roundId, seconds * 1000, deadline).asReadOnlyBuffer();
+            if (Log.isDebugEnabled()) {
+                Log.debug("[" + name + "] " + (phase == Phase.POLLING ? "Polling" : "Answering") + " phase ends at server clock " + deadline);
+            }
+            phaseSentAt = System.nanoTime();
+            broadcast(frame);
+            end = Server.getPhaseScheduler().schedule(this, seconds, TimeUnit.SECONDS);
+        }
+
+        ByteBuffer frame() {
+            return frame;
+        }
+
+        @Override
+        public void run() {
+            finish();
+        }
+
+        // Ends the phase at or before its deadline; only the first call has any effect
+        void finish() {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            synchronized (this) {
+                if (end != null) { // null if the phase ends before it was announced
+                    end.cancel(false);
+                }
+            }
+            onPhaseEnd(this);
+        }
+
+        // Stops the phase without moving the game along
+        void cancel() {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            synchronized (this) {
+                if (end != null) {
+                    end.cancel(false);
+                }
+            }
+        }
+    }
+}
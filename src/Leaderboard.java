@@ -0,0 +1,209 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Live ranking of one room's players.
+// A score update locks that player's own entry, so players never wait on each other; the score
+// counts are only locked exclusively when their range has to grow. Scores are plain ints rather
+// than striped counters, since moving a player in the ranking needs their exact old score.
+// Players are kept in a concurrent skip list ordered by score for top-N, and a Fenwick tree
+// counts players per score so a rank is O(log range) however many players there are.
+public class Leaderboard {
+    private final ConcurrentHashMap<String, Player> players = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Ranked> order = new ConcurrentSkipListSet<>();
+    private final ScoreCounts counts = new ScoreCounts();
+
+    // Immutable position in the skip list: higher scores first, then by ClientID
+    private static final class Ranked implements Comparable<Ranked> {
+        final int score;
+        final String clientID;
+
+        Ranked(int score, String clientID) {
+            this.score = score;
+            this.clientID = clientID;
+        }
+
+        @Override
+        public int compareTo(Ranked other) {
+            int byScore = Integer.compare(other.score, score);
+            return byScore != 0 ? byScore : clientID.compareTo(other.clientID);
+        }
+    }
+
+    private static final class Player {
+        volatile int score = 0;
+        Ranked ranked; // guarded by the player's monitor
+        boolean removed; // guarded by the player's monitor; set once the player left the ranking
+
+        Player(String clientID) {
+            ranked = new Ranked(0, clientID);
+        }
+    }
+
+    // Adds a player with score 0, if not already ranked
+    public void register(String clientID) {
+        player(clientID);
+    }
+
+    private Player player(String clientID) {
+        Player player = players.get(clientID);
+        if (player != null) {
+            return player;
+        }
+        return players.computeIfAbsent(clientID, id -> {
+            Player created = new Player(id);
+            counts.add(0, 1);
+            order.add(created.ranked);
+            return created;
+        });
+    }
+
+    // Adds points to a player's score and moves them in the ranking. A player removed while the
+    // points were on their way is not ranked again.
+    public void addScore(String clientID, int points) {
+        Player player = player(clientID);
+        synchronized (player) {
+            if (player.removed) {
+                return;
+            }
+            int old = player.score;
+            int updated = old + points;
+            order.remove(player.ranked);
+            player.ranked = new Ranked(updated, clientID);
+            order.add(player.ranked);
+            counts.add(old, -1);
+            counts.add(updated, 1);
+            player.score = updated;
+        }
+    }
+
+    // Takes a player out of the ranking
+    public void remove(String clientID) {
+        Player player = players.remove(clientID);
+        if (player == null) {
+            return;
+        }
+        synchronized (player) {
+            player.removed = true;
+            order.remove(player.ranked);
+            counts.add(player.score, -1);
+        }
+    }
+
+    public int score(String clientID) {
+        Player player = players.get(clientID);
+        return player == null ? 0 : player.score;
+    }
+
+    // 1 + number of players with a higher score; tied players share a rank
+    public int rank(String clientID) {
+        return rankOf(score(clientID));
+    }
+
+    private int rankOf(int score) {
+        return (int) (players.size() - counts.atMost(score)) + 1;
+    }
+
+    public int size() {
+        return players.size();
+    }
+
+    // The best n players, best first
+    public List<Protocol.Standing> top(int n) {
+        List<Protocol.Standing> top = new ArrayList<>(n);
+        for (Ranked ranked : order) {
+            if (top.size() == n) {
+                break;
+            }
+            top.add(new Protocol.Standing(rankOf(ranked.score), ranked.score, ranked.clientID));
+        }
+        return top;
+    }
+
+    public Protocol.Standing standing(String clientID) {
+        int score = score(clientID);
+        return new Protocol.Standing(rankOf(score), score, clientID);
+    }
+
+    // Number of players per score as a Fenwick tree over [low, low + size). Counts are updated
+    // with atomic adds under the shared read lock; the write lock is only taken to widen the range.
+    private static class ScoreCounts {
+        private final ReentrantReadWriteLock resize = new ReentrantReadWriteLock();
+        private int low = -1024; // score at tree index 1
+        private AtomicLongArray tree = new AtomicLongArray(2048 + 1);
+
+        void add(int score, int delta) {
+            while (true) {
+                resize.readLock().lock();
+                try {
+                    int i = score - low + 1;
+                    if (i >= 1 && i < tree.length()) {
+                        for (; i < tree.length(); i += i & -i) {
+                            tree.addAndGet(i, delta);
+                        }
+                        return;
+                    }
+                } finally {
+                    resize.readLock().unlock();
+                }
+                grow(score);
+            }
+        }
+
+        // Number of players whose score is at most score
+        long atMost(int score) {
+            resize.readLock().lock();
+            try {
+                return prefix(tree, Math.min(score - low + 1, tree.length() - 1));
+            } finally {
+                resize.readLock().unlock();
+            }
+        }
+
+        private static long prefix(AtomicLongArray tree, int i) {
+            long sum = 0;
+            for (; i > 0; i -= i & -i) {
+                sum += tree.get(i);
+            }
+            return sum;
+        }
+
+        // Doubles the range until score fits, rebuilding the tree; rare, since scores move in small steps
+        private void grow(int score) {
+            resize.writeLock().lock();
+            try {
+                int size = tree.length() - 1;
+                if (score >= low && score < low + size) {
+                    return; // another thread already grew it
+                }
+                long[] perScore = new long[size];
+                for (int i = 1; i <= size; i++) {
+                    perScore[i - 1] = prefix(tree, i) - prefix(tree, i - 1);
+                }
+                int newLow = low;
+                int newSize = size;
+                while (score < newLow || score >= newLow + newSize) {
+                    newLow -= newSize / 2;
+                    newSize *= 2;
+                }
+                long[] built = new long[newSize + 1];
+                for (int i = 0; i < size; i++) {
+                    built[low - newLow + i + 1] = perScore[i];
+                }
+                for (int i = 1; i <= newSize; i++) {
+                    int parent = i + (i & -i);
+                    if (parent <= newSize) {
+                        built[parent] += built[i];
+                    }
+                }
+                tree = new AtomicLongArray(built);
+                low = newLow;
+            } finally {
+                resize.writeLock().unlock();
+            }
+        }
+    }
+}
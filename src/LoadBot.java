@@ -0,0 +1,477 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Headless load generator: thousands of simulated players in one process, speaking the same
+// protocol as Client. A few selector threads multiplex every bot's socket, one shared datagram
+// channel sends their buzzes, and one scheduler thread plays their buzz and answer delays.
+// Nothing waits on a socket: a line that does not fit is left to the bot's selector thread.
+// Reports the connect rate, how far apart the same PHASE frame reaches different bots, how far
+// apart the bots' clock-synced countdowns end, and buzz-to-ack and answer-to-verdict latency percentiles.
+// Run with: java LoadBot [config file], then START the bots' rooms on the server console.
+public class LoadBot {
+    private static String SERVER_IP = "127.0.0.1";
+    private static int SERVER_PORT = 1000;
+    private static int UDP_PORT = 2000;
+    private static int BOTS = 1000; // simulated players
+    private static String ROOM = "lobby"; // room to join; with ROOMS > 1, bots spread over ROOM-0 .. ROOM-(ROOMS-1)
+    private static int ROOMS = 1;
+    private static int CONNECT_RATE = 500; // new connections per second
+    private static int IO_THREADS = 2; // selector threads shared by all bots
+    private static double BUZZ_PROBABILITY = 0.5; // chance a bot buzzes for a question
+    private static int BUZZ_DELAY_MS = 2000; // buzzes are spread uniformly over this long after the question arrives
+    private static int ANSWER_DELAY_MS = 500; // acked bots answer after up to this long
+    private static double CORRECT_PROBABILITY = 0.5; // chance an answer is the correct one
+    private static boolean ANSWER_WITHOUT_ACK = false; // every bot answers every question, to load the answer path
+    private static int DURATION_SECONDS = 120;
+    private static int REPORT_SECONDS = 5;
+
+    private static final LatencyHistogram connectLatency = new LatencyHistogram(); // TCP connect
+    private static final LatencyHistogram sessionLatency = new LatencyHistogram(); // connect start to SESSION frame
+    private static final LatencyHistogram phaseSkew = new LatencyHistogram(); // arrival after the first bot got the same PHASE frame
+    private static final LatencyHistogram deadlineSkew = new LatencyHistogram(); // distance of a bot's local deadline from the first bot's
+    private static final LatencyHistogram buzzToAck = new LatencyHistogram(); // buzz sent to ACK/NACK received
+    private static final LatencyHistogram answerToVerdict = new LatencyHistogram(); // ANSWER sent to verdict received
+    private static final ConcurrentHashMap<PhaseKey, long[]> firstPhase = new ConcurrentHashMap<>(); // arrival and local deadline per phase
+    private static final int PHASE_ROUNDS_KEPT = 2; // rounds back a late PHASE frame is still matched
+    private static final int SYNC_PINGS = 3; // clock round trips per bot, as the client does on connect
+    private static final AtomicInteger sessions = new AtomicInteger();
+    private static final LongAdder frames = new LongAdder();
+    private static final LongAdder questions = new LongAdder();
+    private static final LongAdder buzzes = new LongAdder();
+    private static final LongAdder acks = new LongAdder();
+    private static final LongAdder nacks = new LongAdder();
+    private static final LongAdder correct = new LongAdder();
+    private static final LongAdder incorrect = new LongAdder();
+    private static final LongAdder rejected = new LongAdder();
+    private static final LongAdder timeouts = new LongAdder();
+    private static final LongAdder disconnects = new LongAdder();
+    private static final LongAdder connectFailures = new LongAdder();
+
+    private static ScheduledExecutorService actions;
+    private static DatagramChannel udp;
+    private static InetSocketAddress udpAddress;
+
+    // One simulated player; its socket is only read by its worker thread
+    private static class Bot {
+        final int index;
+        final String room;
+        final long connectStartedAt;
+        final SocketChannel channel;
+        final Worker worker;
+        ByteBuffer in = ByteBuffer.allocate(8192);
+        ByteBuffer out = ByteBuffer.allocate(256); // lines the socket did not take yet, guarded by the bot
+        volatile long token;
+        int roundId; // round of the question on screen
+        Question question;
+        long clockOffset; // server clock minus local clock in ms, estimated like Client does
+        long bestRoundTrip = Long.MAX_VALUE;
+        volatile long buzzSentAt;
+        volatile long answerSentAt;
+
+        Bot(int index, String room, long connectStartedAt, SocketChannel channel, Worker worker) {
+            this.index = index;
+            this.room = room;
+            this.connectStartedAt = connectStartedAt;
+            this.channel = channel;
+            this.worker = worker;
+        }
+    }
+
+    // One phase of one question in one room
+    private static final class PhaseKey {
+        final String room;
+        final int roundId;
+        final byte phase;
+
+        PhaseKey(String room, int roundId, byte phase) {
+            this.room = room;
+            this.roundId = roundId;
+            this.phase = phase;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof PhaseKey key && key.roundId == roundId && key.phase == phase && key.room.equals(room);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(room, roundId, phase);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        loadConfig(args.length > 0 ? args[0] : "config/loadBotConfig.txt");
+        actions = Executors.newSingleThreadScheduledExecutor();
+        udp = DatagramChannel.open();
+        udpAddress = new InetSocketAddress(SERVER_IP, UDP_PORT);
+
+        Worker[] workers = new Worker[Math.max(1, IO_THREADS)];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker();
+            Thread thread = new Thread(workers[i], "bot-io-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        // Connect at a steady rate, so the server's accept path is measured rather than the SYN backlog
+        List<Bot> bots = new ArrayList<>(BOTS);
+        InetSocketAddress serverAddress = new InetSocketAddress(SERVER_IP, SERVER_PORT);
+        long start = System.nanoTime();
+        long interval = 1_000_000_000L / Math.max(1, CONNECT_RATE);
+        for (int i = 0; i < BOTS; i++) {
+            long due = start + i * interval;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            String room = ROOMS > 1 ? ROOM + "-" + (i % ROOMS) : ROOM;
+            long connectStartedAt = System.nanoTime();
+            try {
+                SocketChannel channel = SocketChannel.open(serverAddress);
+                connectLatency.record(System.nanoTime() - connectStartedAt);
+                channel.socket().setTcpNoDelay(true);
+                channel.configureBlocking(false);
+                Bot bot = new Bot(i, room, connectStartedAt, channel, workers[i % workers.length]);
+                bots.add(bot);
+                bot.worker.add(bot);
+                send(bot, Protocol.joinLine(room));
+                for (int p = 0; p < SYNC_PINGS; p++) {
+                    send(bot, Protocol.pingLine(System.nanoTime() / 1_000_000));
+                }
+            } catch (IOException e) {
+                connectFailures.increment();
+            }
+        }
+        long connectNanos = System.nanoTime() - start;
+        System.out.printf("Connected %d of %d bots in %d ms (%.0f/s, %d failed); connect p50=%dus p99=%dus; session p50=%dus p99=%dus%n",
+                bots.size(), BOTS, connectNanos / 1_000_000, bots.size() * 1e9 / connectNanos, connectFailures.sum(),
+                connectLatency.percentile(0.5) / 1000, connectLatency.percentile(0.99) / 1000,
+                sessionLatency.percentile(0.5) / 1000, sessionLatency.percentile(0.99) / 1000);
+        System.out.println("Start the game on the server (START:" + (ROOMS > 1 ? ROOM + "-<n>" : ROOM) + ") to load it.");
+
+        long end = System.nanoTime() + DURATION_SECONDS * 1_000_000_000L;
+        long lastFrames = 0;
+        while (System.nanoTime() < end) {
+            Thread.sleep(REPORT_SECONDS * 1000L);
+            long total = frames.sum();
+            System.out.printf("sessions=%d frames/s=%d questions=%d buzzes=%d acks=%d verdicts=%d disconnects=%d | phase skew p99=%dus | verdict p99=%dus%n",
+                    sessions.get(), (total - lastFrames) / REPORT_SECONDS, questions.sum(), buzzes.sum(), acks.sum(),
+                    correct.sum() + incorrect.sum() + rejected.sum(), disconnects.sum(),
+                    phaseSkew.percentile(0.99) / 1000, answerToVerdict.percentile(0.99) / 1000);
+            lastFrames = total;
+        }
+
+        System.out.println();
+        System.out.println("Bots:              " + bots.size() + " connected, " + sessions.get() + " sessions, " + disconnects.sum() + " disconnected");
+        System.out.println("Questions seen:    " + questions.sum() + " (summed over bots)");
+        System.out.println("Buzzes:            " + buzzes.sum() + " sent, " + acks.sum() + " acked, " + nacks.sum() + " nacked");
+        System.out.println("Verdicts:          " + correct.sum() + " correct, " + incorrect.sum() + " incorrect, "
+                + rejected.sum() + " rejected, " + timeouts.sum() + " timeouts");
+        System.out.println("Connect:           " + connectLatency.summary());
+        System.out.println("Connect->SESSION:  " + sessionLatency.summary());
+        System.out.println("PHASE skew:        " + phaseSkew.summary());
+        System.out.println("Deadline skew:     " + deadlineSkew.summary());
+        System.out.println("Buzz->ack:         " + buzzToAck.summary());
+        System.out.println("Answer->verdict:   " + answerToVerdict.summary());
+        for (Bot bot : bots) {
+            bot.channel.close();
+        }
+        actions.shutdownNow();
+    }
+
+    // Selector loop reading frames for its share of the bots, and writing what their sockets did not take
+    private static class Worker implements Runnable {
+        private final Selector selector;
+        private final ConcurrentLinkedQueue<Bot> added = new ConcurrentLinkedQueue<>();
+        private final ConcurrentLinkedQueue<Bot> backlogged = new ConcurrentLinkedQueue<>();
+
+        Worker() throws IOException {
+            selector = Selector.open();
+        }
+
+        void add(Bot bot) {
+            added.add(bot);
+            selector.wakeup();
+        }
+
+        // Called when a bot has output left over: wait for its socket to drain instead of spinning
+        void flushLater(Bot bot) {
+            backlogged.add(bot);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    selector.select();
+                    Bot bot;
+                    while ((bot = added.poll()) != null) {
+                        bot.channel.register(selector, SelectionKey.OP_READ, bot);
+                    }
+                    while ((bot = backlogged.poll()) != null) {
+                        SelectionKey key = bot.channel.keyFor(selector);
+                        if (key == null) {
+                            backlogged.add(bot); // registered on the next round
+                            break;
+                        }
+                        if (key.isValid()) {
+                            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        }
+                    }
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        if (key.isValid() && key.isWritable()) {
+                            write((Bot) key.attachment(), key);
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            read((Bot) key.attachment(), key);
+                        }
+                    }
+                } catch (IOException e) {
+                    System.err.println("Bot selector error: " + e.getMessage());
+                }
+            }
+        }
+
+        private void write(Bot bot, SelectionKey key) {
+            try {
+                synchronized (bot) {
+                    bot.out.flip();
+                    bot.channel.write(bot.out);
+                    bot.out.compact();
+                    if (bot.out.position() == 0) {
+                        key.interestOps(SelectionKey.OP_READ);
+                    }
+                }
+            } catch (IOException e) {
+                key.cancel(); // the reader sees the disconnect
+            }
+        }
+
+        private void read(Bot bot, SelectionKey key) {
+            try {
+                if (bot.channel.read(bot.in) < 0) {
+                    throw new IOException("closed by server");
+                }
+                long now = System.nanoTime();
+                bot.in.flip();
+                while (bot.in.remaining() >= 4) {
+                    int length = bot.in.getInt(bot.in.position());
+                    if (length < 2 || length > Protocol.MAX_FRAME_LENGTH) {
+                        throw new IOException("invalid frame length " + length);
+                    }
+                    if (bot.in.remaining() < 4 + length) {
+                        if (4 + length > bot.in.capacity()) {
+                            bot.in = ByteBuffer.allocate(4 + length).put(bot.in).flip(); // grow for a large frame
+                        }
+                        break;
+                    }
+                    ByteBuffer body = bot.in.slice(bot.in.position() + 4, length);
+                    bot.in.position(bot.in.position() + 4 + length);
+                    handle(bot, Protocol.decode(body), now);
+                }
+                bot.in.compact();
+            } catch (IOException e) {
+                disconnects.increment();
+                key.cancel();
+                try {
+                    bot.channel.close();
+                } catch (IOException ignored) {
+                    // already gone
+                }
+            }
+        }
+    }
+
+    private static void handle(Bot bot, Protocol.Frame frame, long now) {
+        frames.increment();
+        switch (frame.opcode) {
+            case Protocol.SESSION:
+                if (bot.token == 0) {
+                    sessions.incrementAndGet();
+                    sessionLatency.record(now - bot.connectStartedAt);
+                }
+                bot.token = frame.token;
+                break;
+            case Protocol.QUESTION:
+                questions.increment();
+                bot.roundId = frame.value;
+                bot.question = frame.question;
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                if (random.nextDouble() < BUZZ_PROBABILITY) {
+                    int roundId = frame.value;
+                    actions.schedule(() -> buzz(bot, roundId), random.nextInt(BUZZ_DELAY_MS + 1), TimeUnit.MILLISECONDS);
+                }
+                if (ANSWER_WITHOUT_ACK) {
+                    scheduleAnswer(bot);
+                }
+                break;
+            case Protocol.PHASE:
+                // every bot in the room gets the same PHASE frame; measure the spread of its arrival
+                // and of the deadline each bot computes from it with its own clock offset
+                long localDeadline = frame.serverTime - bot.clockOffset;
+                PhaseKey key = new PhaseKey(bot.room, frame.value, frame.phase);
+                long[] first = firstPhase.putIfAbsent(key, new long[] {now, localDeadline});
+                if (first == null) {
+                    // the first bot to see a phase forgets the room's phases of long-gone rounds
+                    firstPhase.keySet().removeIf(old -> old.room.equals(key.room) && old.roundId < key.roundId - PHASE_ROUNDS_KEPT);
+                }
+                phaseSkew.record(first == null ? 0 : now - first[0]);
+                deadlineSkew.record(first == null ? 0 : Math.abs(localDeadline - first[1]) * 1_000_000);
+                break;
+            case Protocol.PONG:
+                long received = now / 1_000_000;
+                long roundTrip = received - frame.clientTime;
+                if (roundTrip <= bot.bestRoundTrip + 2) {
+                    bot.bestRoundTrip = Math.min(bot.bestRoundTrip, roundTrip);
+                    bot.clockOffset = frame.serverTime - (frame.clientTime + received) / 2;
+                }
+                break;
+            case Protocol.ACK:
+                acks.increment();
+                buzzToAck.record(now - bot.buzzSentAt);
+                if (!ANSWER_WITHOUT_ACK) {
+                    scheduleAnswer(bot);
+                }
+                break;
+            case Protocol.NACK:
+                nacks.increment();
+                buzzToAck.record(now - bot.buzzSentAt);
+                break;
+            case Protocol.CORRECT:
+                correct.increment();
+                answerToVerdict.record(now - bot.answerSentAt);
+                break;
+            case Protocol.INCORRECT:
+                incorrect.increment();
+                answerToVerdict.record(now - bot.answerSentAt);
+                break;
+            case Protocol.REJECTED:
+                rejected.increment();
+                answerToVerdict.record(now - bot.answerSentAt);
+                break;
+            case Protocol.TIMEOUT:
+                timeouts.increment();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static void buzz(Bot bot, int roundId) {
+        try {
+            bot.buzzSentAt = System.nanoTime();
+            udp.send(ByteBuffer.wrap(Protocol.encodeBuzz(roundId, bot.token)), udpAddress);
+            buzzes.increment();
+        } catch (IOException e) {
+            System.err.println("Buzz failed: " + e.getMessage());
+        }
+    }
+
+    private static void scheduleAnswer(Bot bot) {
+        int roundId = bot.roundId;
+        Question question = bot.question;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String answer = question.getCorrectAnswer();
+        if (random.nextDouble() >= CORRECT_PROBABILITY) {
+            for (String option : question.getOptions()) {
+                if (!option.equals(answer)) {
+                    answer = option;
+                    break;
+                }
+            }
+        }
+        String line = Protocol.answerLine(roundId, answer);
+        actions.schedule(() -> {
+            bot.answerSentAt = System.nanoTime();
+            send(bot, line);
+        }, random.nextInt(ANSWER_DELAY_MS + 1), TimeUnit.MILLISECONDS);
+    }
+
+    // Writes one line from any thread without waiting: what the socket does not take now is
+    // queued behind anything already waiting and written by the bot's worker once it drains
+    private static void send(Bot bot, String line) {
+        ByteBuffer bytes = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+        try {
+            synchronized (bot) {
+                boolean waiting = bot.out.position() > 0;
+                if (!waiting) {
+                    bot.channel.write(bytes);
+                    if (!bytes.hasRemaining()) {
+                        return;
+                    }
+                }
+                if (bot.out.remaining() < bytes.remaining()) {
+                    bot.out = ByteBuffer.allocate(Math.max(bot.out.capacity() * 2, bot.out.position() + bytes.remaining()))
+                            .put(bot.out.flip());
+                }
+                bot.out.put(bytes);
+                if (waiting) {
+                    return; // the worker is already waiting to write
+                }
+            }
+            bot.worker.flushLater(bot);
+        } catch (IOException e) {
+            // the reader sees the disconnect
+        }
+    }
+
+    private static void loadConfig(String path) {
+        Properties props = new Properties();
+        try (FileInputStream in = new FileInputStream(path)) {
+            props.load(in);
+        } catch (IOException e) {
+            System.out.println("No bot config at " + path + ", using defaults.");
+        }
+        try {
+            SERVER_IP = props.getProperty("server_ips", SERVER_IP).split(",")[0].trim(); // same key as the client config
+            SERVER_PORT = Integer.parseInt(props.getProperty("port", String.valueOf(SERVER_PORT)).trim());
+            UDP_PORT = Integer.parseInt(props.getProperty("udp_port", String.valueOf(UDP_PORT)).trim());
+            BOTS = Integer.parseInt(props.getProperty("bots", String.valueOf(BOTS)).trim());
+            ROOM = props.getProperty("room", ROOM).trim();
+            ROOMS = Integer.parseInt(props.getProperty("rooms", String.valueOf(ROOMS)).trim());
+            CONNECT_RATE = Integer.parseInt(props.getProperty("connect_rate", String.valueOf(CONNECT_RATE)).trim());
+            IO_THREADS = Integer.parseInt(props.getProperty("io_threads", String.valueOf(IO_THREADS)).trim());
+            BUZZ_PROBABILITY = Double.parseDouble(props.getProperty("buzz_probability", String.valueOf(BUZZ_PROBABILITY)).trim());
+            BUZZ_DELAY_MS = Integer.parseInt(props.getProperty("buzz_delay_ms", String.valueOf(BUZZ_DELAY_MS)).trim());
+            ANSWER_DELAY_MS = Integer.parseInt(props.getProperty("answer_delay_ms", String.valueOf(ANSWER_DELAY_MS)).trim());
+            CORRECT_PROBABILITY = Double.parseDouble(props.getProperty("correct_probability", String.valueOf(CORRECT_PROBABILITY)).trim());
+            ANSWER_WITHOUT_ACK = Boolean.parseBoolean(props.getProperty("answer_without_ack", String.valueOf(ANSWER_WITHOUT_ACK)).trim());
+            DURATION_SECONDS = Integer.parseInt(props.getProperty("duration_seconds", String.valueOf(DURATION_SECONDS)).trim());
+            REPORT_SECONDS = Integer.parseInt(props.getProperty("report_seconds", String.valueOf(REPORT_SECONDS)).trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Error reading bot config file: " + e.getMessage());
+            System.exit(1);
+        }
+        System.out.println("Loaded bot configuration: SERVER=" + SERVER_IP + ":" + SERVER_PORT + ", UDP_PORT=" + UDP_PORT
+                + ", BOTS=" + BOTS + ", ROOM=" + ROOM + ", ROOMS=" + ROOMS + ", CONNECT_RATE=" + CONNECT_RATE
+                + ", IO_THREADS=" + IO_THREADS + ", BUZZ_PROBABILITY=" + BUZZ_PROBABILITY + ", BUZZ_DELAY_MS=" + BUZZ_DELAY_MS
+                + ", ANSWER_DELAY_MS=" + ANSWER_DELAY_MS + ", CORRECT_PROBABILITY=" + CORRECT_PROBABILITY
+                + ", ANSWER_WITHOUT_ACK=" + ANSWER_WITHOUT_ACK + ", DURATION_SECONDS=" + DURATION_SECONDS);
+    }
+}
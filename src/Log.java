@@ -0,0 +1,144 @@
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Asynchronous, levelled logging. Callers only copy a reference into a lock-free ring buffer;
+// a background thread does the console I/O. When the ring is full, messages are dropped and
+// counted rather than making a hot path wait.
+public class Log {
+    public static final int DEBUG = 0;
+    public static final int INFO = 1;
+    public static final int WARN = 2;
+    public static final int ERROR = 3;
+    public static final int OFF = 4;
+
+    private static final int CAPACITY = 1 << 16;
+    private static final int MASK = CAPACITY - 1;
+    private static final String[] messages = new String[CAPACITY];
+    private static final int[] levels = new int[CAPACITY];
+    private static final AtomicLongArray published = new AtomicLongArray(CAPACITY); // sequence + 1 once a slot is readable
+    private static final AtomicLong tail = new AtomicLong(); // next sequence to claim
+    private static volatile long head = 0; // next sequence to print, only advanced by the flusher
+    private static final LongAdder dropped = new LongAdder();
+    private static volatile int level = INFO;
+
+    static {
+        Thread flusher = new Thread(Log::flushLoop, "log-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        // print whatever is still buffered when the JVM exits
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::drain));
+    }
+
+    // Parses DEBUG, INFO, WARN, ERROR or OFF; unknown names leave the level unchanged
+    public static void setLevel(String name) {
+        switch (name.trim().toUpperCase()) {
+            case "DEBUG": level = DEBUG; break;
+            case "INFO": level = INFO; break;
+            case "WARN": level = WARN; break;
+            case "ERROR": level = ERROR; break;
+            case "OFF": level = OFF; break;
+            default: System.err.println("Unknown log level: " + name);
+        }
+    }
+
+    // Guard for per-message logs, so the message string is not even built when debug is off
+    public static boolean isDebugEnabled() {
+        return level <= DEBUG;
+    }
+
+    public static void debug(String message) {
+        log(DEBUG, message);
+    }
+
+    public static void info(String message) {
+        log(INFO, message);
+    }
+
+    public static void warn(String message) {
+        log(WARN, message);
+    }
+
+    public static void error(String message) {
+        log(ERROR, message);
+    }
+
+    // Logs the message followed by the stack trace; for failures nobody else will report
+    public static void error(String message, Throwable cause) {
+        if (ERROR < level) {
+            return;
+        }
+        StringWriter trace = new StringWriter();
+        cause.printStackTrace(new PrintWriter(trace));
+        log(ERROR, message + System.lineSeparator() + trace.toString().stripTrailing());
+    }
+
+    public static long droppedCount() {
+        return dropped.sum();
+    }
+
+    private static void log(int messageLevel, String message) {
+        if (messageLevel < level) {
+            return;
+        }
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head >= CAPACITY) {
+                dropped.increment(); // flusher is behind; never block the caller
+                return;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+        int slot = (int) (sequence & MASK);
+        messages[slot] = message;
+        levels[slot] = messageLevel;
+        published.lazySet(slot, sequence + 1);
+    }
+
+    private static void flushLoop() {
+        while (true) {
+            if (drain() == 0) {
+                LockSupport.parkNanos(1_000_000L);
+            }
+        }
+    }
+
+    // Prints every published message in order; returns how many were printed
+    private static synchronized int drain() {
+        int count = 0;
+        boolean wroteOut = false;
+        boolean wroteErr = false;
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        long next = head;
+        while (true) {
+            int slot = (int) (next & MASK);
+            if (published.get(slot) != next + 1) {
+                break;
+            }
+            String message = messages[slot];
+            messages[slot] = null;
+            if (levels[slot] >= WARN) {
+                err.println(message);
+                wroteErr = true;
+            } else {
+                out.println(message);
+                wroteOut = true;
+            }
+            next++;
+            head = next; // frees the slot for producers
+            count++;
+        }
+        if (wroteOut) {
+            out.flush();
+        }
+        if (wroteErr) {
+            err.flush();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,130 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+// Serves ServerMetrics to monitoring tools: as read-only attributes of the JMX MBean
+// TriviaServer:type=ServerMetrics, and as "name value" text lines at http://127.0.0.1:<port>/metrics.
+// HTTP takes a fresh ServerMetrics.snapshot() per request. JMX consoles read attributes one at a
+// time, so the MBean reuses a snapshot for SNAPSHOT_MAX_AGE_MILLIS instead of taking one per
+// attribute. Nothing is added to the recording paths.
+public class MetricsEndpoint {
+    public static final String OBJECT_NAME = "TriviaServer:type=ServerMetrics";
+    private static final long SNAPSHOT_MAX_AGE_MILLIS = 1000; // well under any console's refresh interval
+
+    // Registers the MBean, and starts the HTTP endpoint unless httpPort is 0
+    public static void start(int httpPort) throws IOException, JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(), new ObjectName(OBJECT_NAME));
+        Log.info("Metrics registered with JMX as " + OBJECT_NAME);
+        if (httpPort == 0) {
+            return;
+        }
+        // loopback only: the numbers are for the operator, not for players
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), httpPort), 0);
+        server.createContext("/metrics", MetricsEndpoint::serve);
+        server.start(); // one dispatcher thread is plenty for a scraper
+        Log.info("Metrics served at http://127.0.0.1:" + httpPort + "/metrics");
+    }
+
+    private static void serve(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            StringBuilder text = new StringBuilder(2048);
+            for (Map.Entry<String, Long> metric : ServerMetrics.snapshot().entrySet()) {
+                text.append(metric.getKey()).append(' ').append(metric.getValue()).append('\n');
+            }
+            byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    // Exposes every snapshot entry as a long attribute of the same name
+    private static class MetricsMBean implements DynamicMBean {
+        private final MBeanInfo info;
+        private Map<String, Long> snapshot; // guarded by this
+        private long snapshotAt; // System.nanoTime() the snapshot was taken
+
+        MetricsMBean() {
+            Map<String, Long> names = ServerMetrics.snapshot();
+            MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[names.size()];
+            int i = 0;
+            for (String name : names.keySet()) {
+                attributes[i++] = new MBeanAttributeInfo(name, "long", name, true, false, false);
+            }
+            info = new MBeanInfo(MetricsMBean.class.getName(), "Trivia server metrics", attributes, null, null, null);
+        }
+
+        // The latest snapshot, taken again once it is older than SNAPSHOT_MAX_AGE_MILLIS
+        private synchronized Map<String, Long> values() {
+            long now = System.nanoTime();
+            if (snapshot == null || now - snapshotAt > SNAPSHOT_MAX_AGE_MILLIS * 1_000_000) {
+                snapshot = ServerMetrics.snapshot();
+                snapshotAt = now;
+            }
+            return snapshot;
+        }
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Long value = values().get(attribute);
+            if (value == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            return value;
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            Map<String, Long> values = values(); // one snapshot for the whole request
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                Long value = values.get(attribute);
+                if (value != null) {
+                    list.add(new Attribute(attribute, value));
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList(); // all attributes are read-only
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            return info;
+        }
+    }
+}
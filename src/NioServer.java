@@ -0,0 +1,290 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Non-blocking server mode: a handful of selector threads own every player socket
+// instead of one platform thread per client
+public class NioServer {
+    private static final int MAX_LINE_BYTES = 8 * 1024; // longest line a client may send; real lines are far shorter
+    private final int port;
+    private final int backlog;
+    private final IOWorker[] workers;
+    private int nextWorker = 0;
+
+    public NioServer(int port, int backlog, int ioThreads) throws IOException {
+        this.port = port;
+        this.backlog = backlog;
+        workers = new IOWorker[Math.max(1, ioThreads)];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new IOWorker();
+        }
+    }
+
+    // Starts the I/O threads and accepts new players on the calling thread
+    public void start() throws IOException {
+        for (int i = 0; i < workers.length; i++) {
+            Thread worker = new Thread(workers[i], "nio-io-" + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress("0.0.0.0", port), backlog);
+            Log.info("NIO server listening on port " + port + " with " + workers.length + " I/O threads.");
+
+            while (true) {
+                SocketChannel channel = serverChannel.accept();
+                if (!Server.tryAcquireConnection()) {
+                    Log.warn("Connection limit reached, refusing " + channel.getRemoteAddress());
+                    channel.close();
+                    continue;
+                }
+                try {
+                    channel.configureBlocking(false);
+                    channel.socket().setTcpNoDelay(true);
+                } catch (IOException e) {
+                    // the peer may already have reset the connection; keep accepting the others
+                    Log.warn("Error setting up connection: " + e.getMessage());
+                    Server.releaseConnection();
+                    closeQuietly(channel);
+                    continue;
+                }
+
+                // Spread players across the I/O threads round-robin
+                IOWorker worker = workers[nextWorker];
+                nextWorker = (nextWorker + 1) % workers.length;
+                worker.register(channel);
+            }
+        }
+    }
+
+    // A selector loop that reads and writes for all of its registered players
+    static class IOWorker implements Runnable {
+        private final Selector selector;
+        private final ConcurrentLinkedQueue<Runnable> pendingTasks = new ConcurrentLinkedQueue<>();
+        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(8192); // shared by every connection on this thread
+
+        IOWorker() throws IOException {
+            selector = Selector.open();
+        }
+
+        // Hands a freshly accepted channel to this worker
+        void register(SocketChannel channel) {
+            execute(() -> {
+                Connection connection = null;
+                try {
+                    SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                    connection = new Connection(this, channel, key);
+                    key.attach(connection);
+                    connection.open();
+                } catch (IOException | RuntimeException e) {
+                    Log.error("Error registering channel: " + e);
+                    if (connection != null) {
+                        connection.closeNow(); // releases the slot and the session
+                    } else {
+                        Server.releaseConnection();
+                        closeQuietly(channel);
+                    }
+                }
+            });
+        }
+
+        // Runs a task on the selector thread
+        void execute(Runnable task) {
+            pendingTasks.add(task);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    selector.select();
+
+                    Runnable task;
+                    while ((task = pendingTasks.poll()) != null) {
+                        try {
+                            task.run();
+                        } catch (RuntimeException e) {
+                            // a bug in one task must not stop the thread every player here depends on
+                            Log.error("Error in I/O task: " + e);
+                        }
+                    }
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Connection connection = (Connection) key.attachment();
+                        if (!key.isValid() || connection == null) {
+                            continue;
+                        }
+                        try {
+                            if (key.isReadable()) {
+                                connection.read(readBuffer);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.flush();
+                            }
+                        } catch (IOException e) {
+                            Log.error("Error handling client: " + e.getMessage());
+                            connection.close();
+                        } catch (RuntimeException e) {
+                            Log.error("Error handling client, closing its connection: " + e);
+                            connection.close();
+                        }
+                    }
+                } catch (IOException e) {
+                    Log.error("Selector error: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // One player socket owned by an I/O thread
+    static class Connection {
+        private final IOWorker worker;
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final AtomicBoolean writeScheduled = new AtomicBoolean(false);
+        private ByteArrayOutputStream lineBuffer; // only allocated while a line is partially received
+        private ByteBuffer pendingWrite; // frame taken from the handler's queue but not fully written yet
+        private byte pendingOpcode; // opcode of pendingWrite, read before writing moves its position
+        private Server.ClientHandler clientHandler;
+        private boolean closed = false;
+
+        Connection(IOWorker worker, SocketChannel channel, SelectionKey key) {
+            this.worker = worker;
+            this.channel = channel;
+            this.key = key;
+        }
+
+        // Called on the I/O thread once the channel is registered
+        void open() throws IOException {
+            String hostAddress = ((InetSocketAddress) channel.getRemoteAddress()).getAddress().getHostAddress();
+            Log.debug("Client connected: " + hostAddress);
+            clientHandler = new Server.ClientHandler(this);
+            clientHandler.register(hostAddress);
+        }
+
+        // Reads whatever is available and passes complete lines to the handler. A client that sends
+        // a line longer than MAX_LINE_BYTES is disconnected rather than buffered without bound.
+        void read(ByteBuffer readBuffer) throws IOException {
+            readBuffer.clear();
+            int read = channel.read(readBuffer);
+            if (read < 0) {
+                close();
+                return;
+            }
+            ServerMetrics.bytesIn.add(read);
+            long receivedAt = System.nanoTime(); // one timestamp for every line in this read
+            readBuffer.flip();
+            while (readBuffer.hasRemaining()) {
+                byte b = readBuffer.get();
+                if (b == '\n') {
+                    String line = lineBuffer == null ? "" : lineBuffer.toString(StandardCharsets.UTF_8);
+                    lineBuffer = null;
+                    if (line.endsWith("\r")) {
+                        line = line.substring(0, line.length() - 1);
+                    }
+                    clientHandler.handleLine(line, receivedAt);
+                } else {
+                    if (lineBuffer == null) {
+                        lineBuffer = new ByteArrayOutputStream(128);
+                    } else if (lineBuffer.size() >= MAX_LINE_BYTES) {
+                        Log.warn("Client " + clientHandler.getclientID() + " sent a line over " + MAX_LINE_BYTES + " bytes; disconnecting.");
+                        lineBuffer = null;
+                        closeNow();
+                        return;
+                    }
+                    lineBuffer.write(b);
+                }
+            }
+        }
+
+        // Asks the I/O thread to drain the handler's outbound queue; safe to call from any thread.
+        // Requests made while the I/O thread is busy are all written on its next wakeup, straight
+        // from the task queue, without waiting for another select to report the socket writable.
+        void requestWrite() {
+            if (writeScheduled.compareAndSet(false, true)) {
+                worker.execute(() -> {
+                    if (!key.isValid()) {
+                        return;
+                    }
+                    try {
+                        flush();
+                    } catch (IOException e) {
+                        Log.error("Error handling client: " + e.getMessage());
+                        close();
+                    } catch (RuntimeException e) {
+                        Log.error("Error writing to client, closing its connection: " + e);
+                        close();
+                    }
+                });
+            }
+        }
+
+        // Writes queued frames until the queue is empty or the socket buffer is full
+        void flush() throws IOException {
+            while (true) {
+                if (pendingWrite == null) {
+                    pendingWrite = clientHandler.pollOutbound();
+                    if (pendingWrite == null) {
+                        break;
+                    }
+                    pendingOpcode = Protocol.opcodeOf(pendingWrite);
+                }
+                ServerMetrics.bytesOut.add(channel.write(pendingWrite));
+                if (pendingWrite.hasRemaining()) {
+                    // socket buffer full, wait for the next OP_WRITE
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+                pendingWrite = null;
+                clientHandler.frameWritten(pendingOpcode);
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            writeScheduled.set(false);
+
+            // A frame may have been queued after the last poll
+            if (clientHandler.hasOutbound() && writeScheduled.compareAndSet(false, true)) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            }
+        }
+
+        // Closes the socket; safe to call from any thread
+        void close() {
+            worker.execute(this::closeNow);
+        }
+
+        private void closeNow() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            key.cancel();
+            closeQuietly(channel);
+            Server.releaseConnection();
+            if (clientHandler != null) {
+                clientHandler.unregister();
+            }
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            Log.error("Error closing socket: " + e.getMessage());
+        }
+    }
+}
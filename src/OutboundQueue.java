@@ -0,0 +1,112 @@
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Bounded queue of frames waiting to be written to one client.
+// Any thread may offer; exactly one writer polls. A queued PHASE frame is dropped when a newer
+// one is offered, since only the phase in play matters. The newer one goes to the tail like any
+// other frame, so it never overtakes the QUESTION of its round; the dropped frame's slot stays
+// behind empty, with its time, until the writer passes it.
+public class OutboundQueue {
+    private final ByteBuffer[] frames;
+    private final long[] enqueuedAt; // System.nanoTime() per slot, used to measure lag
+    private final long maxLagNanos;
+    private final ReentrantLock lock = new ReentrantLock(); // not synchronized, so virtual threads do not pin
+    private int head = 0;
+    private int size = 0; // slots in use, including those of dropped PHASE frames
+    private int queued = 0; // frames still to be written
+    private int phaseSlot = -1; // slot holding a not-yet-written PHASE frame, or -1
+
+    public OutboundQueue(int maxDepth, long maxLagMillis) {
+        frames = new ByteBuffer[maxDepth];
+        enqueuedAt = new long[maxDepth];
+        maxLagNanos = maxLagMillis * 1_000_000L;
+    }
+
+    // Queues a frame; returns false if the client is too far behind and should be evicted
+    public boolean offer(ByteBuffer frame) {
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            if (size > 0 && now - enqueuedAt[head] > maxLagNanos) {
+                return false; // the oldest frame has waited too long, the client stopped reading
+            }
+            if (size == frames.length) {
+                return false;
+            }
+            boolean phase = Protocol.opcodeOf(frame) == Protocol.PHASE;
+            if (phase && phaseSlot >= 0) {
+                frames[phaseSlot] = null; // keep only the latest phase
+                queued--;
+                ServerMetrics.framesCoalesced.increment();
+            }
+            int tail = (head + size) % frames.length;
+            frames[tail] = frame;
+            enqueuedAt[tail] = now;
+            if (phase) {
+                phaseSlot = tail;
+            }
+            size++;
+            queued++;
+            ServerMetrics.framesQueued.increment();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Removes the next frame to write, or returns null if the queue is empty
+    public ByteBuffer poll() {
+        ByteBuffer frame = null;
+        long queuedAt = 0;
+        lock.lock();
+        try {
+            while (frame == null) { // skips the slots of dropped PHASE frames
+                if (size == 0) {
+                    return null;
+                }
+                frame = frames[head];
+                queuedAt = enqueuedAt[head];
+                frames[head] = null;
+                if (phaseSlot == head) {
+                    phaseSlot = -1;
+                }
+                head = (head + 1) % frames.length;
+                size--;
+            }
+            queued--;
+        } finally {
+            lock.unlock();
+        }
+        ServerMetrics.queueWait.record(System.nanoTime() - queuedAt);
+        return frame;
+    }
+
+    public boolean isEmpty() {
+        return depth() == 0;
+    }
+
+    public int depth() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Drops everything still queued
+    public void clear() {
+        lock.lock();
+        try {
+            while (size > 0) {
+                frames[head] = null;
+                head = (head + 1) % frames.length;
+                size--;
+            }
+            queued = 0;
+            phaseSlot = -1;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
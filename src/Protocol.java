@@ -0,0 +1,336 @@
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// Binary wire format for server-to-client messages.
+// Every frame is [int length][byte version][byte opcode][payload], where length counts
+// everything after the length field itself.
+// Times marked "server clock" are milliseconds on the server's monotonic clock; clients map them
+// to their own clock with the offset estimated from PING/PONG round trips.
+public class Protocol {
+    public static final byte VERSION = 5;
+    public static final int MAX_FRAME_LENGTH = 1 << 20; // guards against garbage length prefixes
+
+    // Opcodes
+    public static final byte PHASE = 1; // payload: byte phase, int round id, int duration ms, long deadline (server clock)
+    public static final byte ACK = 2;
+    public static final byte NACK = 3;
+    public static final byte CORRECT = 4;
+    public static final byte INCORRECT = 5;
+    public static final byte TIMEOUT = 6;
+    public static final byte KILL = 7;
+    public static final byte QUESTION = 8; // payload: round id, question, option count, options, correct answer
+    public static final byte GAME_STARTED = 9;
+    public static final byte LEADERBOARD = 10; // payload: int players, byte count, count x standing (best first)
+    public static final byte RANK = 11; // payload: int players, byte 1, the receiving player's standing
+    public static final byte SESSION = 12; // payload: long session token, client id
+    public static final byte REJECTED = 13; // answer not accepted: not your turn, too late or already answered
+    public static final byte PONG = 14; // reply to a PING line; payload: long echoed client time, long server clock
+
+    // Phases in a PHASE frame
+    public static final byte PHASE_POLLING = 1;
+    public static final byte PHASE_ANSWERING = 2;
+
+    private static final int HEADER_LENGTH = 4 + 1 + 1;
+
+    // UDP buzz datagrams are [int round id][long session token]: the round id tells late buzzes
+    // apart and the token says who buzzed, without any text to parse
+    public static final int BUZZ_LENGTH = 4 + 8;
+
+    // Client-to-server messages are text lines; these build them without the line terminator
+
+    // Picks the game room, before the game starts
+    public static String joinLine(String room) {
+        return "JOIN:" + room;
+    }
+
+    // Asks for a PONG, for clock sync
+    public static String pingLine(long clientMillis) {
+        return "PING:" + clientMillis;
+    }
+
+    // An answer, tagged with the round id of the question it is for
+    public static String answerLine(int roundId, String answer) {
+        return "ANSWER:" + roundId + ":" + answer;
+    }
+
+    // Takes back a session after a reconnect
+    public static String resumeLine(long token) {
+        return "RESUME:" + Long.toHexString(token);
+    }
+
+    // Payload-less frames never change, so they are encoded once
+    private static final ByteBuffer[] SIGNALS = new ByteBuffer[REJECTED + 1];
+    static {
+        for (byte opcode : new byte[] {ACK, NACK, CORRECT, INCORRECT, TIMEOUT, KILL, GAME_STARTED, REJECTED}) {
+            SIGNALS[opcode] = header(opcode, 0).flip().asReadOnlyBuffer();
+        }
+    }
+
+    // Returns a ready-to-write frame for an opcode without a payload
+    public static ByteBuffer signal(byte opcode) {
+        return SIGNALS[opcode].duplicate();
+    }
+
+    // Starts a phase on the client, which counts down to the deadline by itself
+    public static ByteBuffer encodePhase(byte phase, int roundId, int durationMillis, long deadline) {
+        ByteBuffer frame = header(PHASE, 1 + 4 + 4 + 8);
+        frame.put(phase);
+        frame.putInt(roundId);
+        frame.putInt(durationMillis);
+        frame.putLong(deadline);
+        return frame.flip();
+    }
+
+    // Answers "PING:<clientTime>" with the client's time and the server clock when it was read
+    public static ByteBuffer encodePong(long clientTime, long serverTime) {
+        ByteBuffer frame = header(PONG, 8 + 8);
+        frame.putLong(clientTime);
+        frame.putLong(serverTime);
+        return frame.flip();
+    }
+
+    public static ByteBuffer encodeQuestion(Question question, int roundId) {
+        byte[] text = question.getQuestion().getBytes(StandardCharsets.UTF_8);
+        String[] options = question.getOptions();
+        byte[][] optionBytes = new byte[options.length][];
+        int payloadLength = 4 + 2 + text.length + 1;
+        for (int i = 0; i < options.length; i++) {
+            optionBytes[i] = options[i].getBytes(StandardCharsets.UTF_8);
+            payloadLength += 2 + optionBytes[i].length;
+        }
+        byte[] correct = question.getCorrectAnswer().getBytes(StandardCharsets.UTF_8);
+        payloadLength += 2 + correct.length;
+
+        ByteBuffer frame = header(QUESTION, payloadLength);
+        frame.putInt(roundId);
+        putString(frame, text);
+        frame.put((byte) options.length);
+        for (byte[] option : optionBytes) {
+            putString(frame, option);
+        }
+        putString(frame, correct);
+        return frame.flip();
+    }
+
+    // Copies an encoded QUESTION frame for another round; the round id is the only difference
+    // between rooms playing the same question, so the question itself is never re-encoded
+    public static ByteBuffer withRoundId(ByteBuffer questionFrame, int roundId) {
+        ByteBuffer frame = ByteBuffer.allocate(questionFrame.remaining());
+        frame.put(questionFrame.duplicate()).flip();
+        return frame.putInt(HEADER_LENGTH, roundId);
+    }
+
+    public static ByteBuffer encodeLeaderboard(List<Standing> top, int players) {
+        return encodeStandings(LEADERBOARD, top, players);
+    }
+
+    public static ByteBuffer encodeRank(Standing standing, int players) {
+        return encodeStandings(RANK, List.of(standing), players);
+    }
+
+    // Standing layout: [int rank][int score][short len][utf-8 client id]
+    private static ByteBuffer encodeStandings(byte opcode, List<Standing> standings, int players) {
+        int count = Math.min(standings.size(), 0xFF);
+        byte[][] ids = new byte[count][];
+        int payloadLength = 4 + 1;
+        for (int i = 0; i < count; i++) {
+            ids[i] = standings.get(i).clientID.getBytes(StandardCharsets.UTF_8);
+            payloadLength += 4 + 4 + 2 + ids[i].length;
+        }
+        ByteBuffer frame = header(opcode, payloadLength);
+        frame.putInt(players);
+        frame.put((byte) count);
+        for (int i = 0; i < count; i++) {
+            frame.putInt(standings.get(i).rank);
+            frame.putInt(standings.get(i).score);
+            putString(frame, ids[i]);
+        }
+        return frame.flip();
+    }
+
+    // Tells a client which session it holds; the token is what it buzzes and resumes with
+    public static ByteBuffer encodeSession(long token, String clientID) {
+        byte[] id = clientID.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = header(SESSION, 8 + 2 + id.length);
+        frame.putLong(token);
+        putString(frame, id);
+        return frame.flip();
+    }
+
+    public static byte[] encodeBuzz(int roundId, long token) {
+        return ByteBuffer.allocate(BUZZ_LENGTH).putInt(roundId).putLong(token).array();
+    }
+
+    // One player's place on a leaderboard
+    public static class Standing {
+        public final int rank;
+        public final int score;
+        public final String clientID;
+
+        public Standing(int rank, int score, String clientID) {
+            this.rank = rank;
+            this.score = score;
+            this.clientID = clientID;
+        }
+    }
+
+    // A decoded frame; only the fields matching the opcode are set
+    public static class Frame {
+        public final byte opcode;
+        public final int value; // PHASE or QUESTION round id, or LEADERBOARD/RANK player count
+        public final Question question;
+        public final Standing[] standings; // LEADERBOARD top players, or the RANK of this player
+        public final long token; // SESSION token
+        public final String clientID; // SESSION client id
+        public final byte phase; // PHASE_POLLING or PHASE_ANSWERING
+        public final int durationMillis; // PHASE length
+        public final long serverTime; // PHASE deadline, or PONG server clock
+        public final long clientTime; // PONG echoed client time
+
+        Frame(byte opcode, int value, Question question) {
+            this(opcode, value, question, null);
+        }
+
+        Frame(byte opcode, int value, Question question, Standing[] standings) {
+            this(opcode, value, question, standings, 0, null);
+        }
+
+        Frame(byte opcode, int value, Question question, Standing[] standings, long token, String clientID) {
+            this(opcode, value, question, standings, token, clientID, (byte) 0, 0, 0, 0);
+        }
+
+        // A PHASE or PONG frame
+        Frame(byte opcode, int value, byte phase, int durationMillis, long serverTime, long clientTime) {
+            this(opcode, value, null, null, 0, null, phase, durationMillis, serverTime, clientTime);
+        }
+
+        private Frame(byte opcode, int value, Question question, Standing[] standings, long token, String clientID,
+                      byte phase, int durationMillis, long serverTime, long clientTime) {
+            this.opcode = opcode;
+            this.value = value;
+            this.question = question;
+            this.standings = standings;
+            this.token = token;
+            this.clientID = clientID;
+            this.phase = phase;
+            this.durationMillis = durationMillis;
+            this.serverTime = serverTime;
+            this.clientTime = clientTime;
+        }
+    }
+
+    // Blocks until a whole frame has been read from the stream
+    public static Frame readFrame(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 2 || length > MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+        byte[] body = new byte[length];
+        in.readFully(body);
+        return decode(ByteBuffer.wrap(body));
+    }
+
+    // Decodes a frame body (everything after the length prefix)
+    public static Frame decode(ByteBuffer body) throws IOException {
+        byte version = body.get();
+        if (version != VERSION) {
+            throw new IOException("Unsupported protocol version: " + version);
+        }
+        byte opcode = body.get();
+        switch (opcode) {
+            case PHASE:
+                byte phase = body.get();
+                int phaseRoundId = body.getInt();
+                int durationMillis = body.getInt();
+                return new Frame(opcode, phaseRoundId, phase, durationMillis, body.getLong(), 0);
+            case PONG:
+                long clientTime = body.getLong();
+                return new Frame(opcode, 0, (byte) 0, 0, body.getLong(), clientTime);
+            case QUESTION:
+                int roundId = body.getInt();
+                String text = getString(body);
+                String[] options = new String[body.get()];
+                for (int i = 0; i < options.length; i++) {
+                    options[i] = getString(body);
+                }
+                String correct = getString(body);
+                return new Frame(opcode, roundId, new Question(text, options, correct));
+            case LEADERBOARD:
+            case RANK:
+                int players = body.getInt();
+                Standing[] standings = new Standing[body.get() & 0xFF];
+                for (int i = 0; i < standings.length; i++) {
+                    int rank = body.getInt();
+                    int score = body.getInt();
+                    standings[i] = new Standing(rank, score, getString(body));
+                }
+                return new Frame(opcode, players, null, standings);
+            case SESSION:
+                long token = body.getLong();
+                return new Frame(opcode, 0, null, null, token, getString(body));
+            case ACK:
+            case NACK:
+            case CORRECT:
+            case INCORRECT:
+            case TIMEOUT:
+            case KILL:
+            case GAME_STARTED:
+            case REJECTED:
+                return new Frame(opcode, 0, null);
+            default:
+                throw new IOException("Unknown opcode: " + opcode);
+        }
+    }
+
+    // Human-readable opcode name for logging
+    public static String name(byte opcode) {
+        switch (opcode) {
+            case PHASE: return "PHASE";
+            case ACK: return "ACK";
+            case NACK: return "NACK";
+            case CORRECT: return "CORRECT";
+            case INCORRECT: return "INCORRECT";
+            case TIMEOUT: return "TIMEOUT";
+            case KILL: return "KILL";
+            case QUESTION: return "QUESTION";
+            case GAME_STARTED: return "GAME_STARTED";
+            case LEADERBOARD: return "LEADERBOARD";
+            case RANK: return "RANK";
+            case SESSION: return "SESSION";
+            case REJECTED: return "REJECTED";
+            case PONG: return "PONG";
+            default: return "UNKNOWN(" + opcode + ")";
+        }
+    }
+
+    // Reads the opcode of an encoded frame without consuming it
+    public static byte opcodeOf(ByteBuffer frame) {
+        return frame.get(frame.position() + 5);
+    }
+
+    private static ByteBuffer header(byte opcode, int payloadLength) {
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_LENGTH + payloadLength);
+        frame.putInt(2 + payloadLength);
+        frame.put(VERSION);
+        frame.put(opcode);
+        return frame;
+    }
+
+    private static void putString(ByteBuffer frame, byte[] bytes) {
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("String too long for a frame: " + bytes.length + " bytes");
+        }
+        frame.putShort((short) bytes.length);
+        frame.put(bytes);
+    }
+
+    private static String getString(ByteBuffer body) {
+        int length = body.getShort() & 0xFFFF;
+        String value = new String(body.array(), body.arrayOffset() + body.position(), length, StandardCharsets.UTF_8);
+        body.position(body.position() + length);
+        return value;
+    }
+}
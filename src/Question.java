@@ -6,6 +6,9 @@ public class Question implements Serializable {
     private String question;
     private String[] options;
     private String correctAnswer;
+    private int id = -1; // position in the question bank, -1 if not from a bank
+    private String category = "";
+    private int difficulty = 0; // 0 when unknown
 
     public Question(String question, String[] options, String correctAnswer) {
         this.question = question;
@@ -13,6 +16,17 @@ public class Question implements Serializable {
         this.correctAnswer = correctAnswer;
     }
 
+    public Question(int id, String question, String[] options, String correctAnswer, String category, int difficulty) {
+        this(question, options, correctAnswer);
+        this.id = id;
+        this.category = category;
+        this.difficulty = difficulty;
+    }
+
+    public int getId() {
+        return id;
+    }
+
     public String getQuestion() {
         return question;
     }
@@ -24,4 +38,12 @@ public class Question implements Serializable {
     public String getCorrectAnswer() {
         return correctAnswer;
     }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public int getDifficulty() {
+        return difficulty;
+    }
 }
\ No newline at end of file
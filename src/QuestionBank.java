@@ -0,0 +1,260 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Read-only question bank stored in a compact binary file and memory-mapped.
+// Questions are decoded one at a time on request, so heap use and open time do not grow
+// with the size of the bank. A bank never changes once opened; games only keep a cursor into it.
+//
+// File layout:
+//   int magic, int version, int count, int categoryCount, long categoryTableOffset
+//   long offset[count]          (absolute file offset of each record)
+//   short category[count]       (index into the category table)
+//   byte difficulty[count]      (0 when unknown)
+//   records: [short len][utf-8 question] [byte n] n x [short len][utf-8 option] [short len][utf-8 answer]
+//   category table: categoryCount x [short len][utf-8 name]
+public class QuestionBank {
+    private static final int MAGIC = 0x51424E4B; // "QBNK"
+    private static final int VERSION = 2;
+    private static final int HEADER_LENGTH = 24;
+    public static final String ANY_CATEGORY = "*";
+
+    private final MappedByteBuffer mapped; // never read through its own position, so it is safe to share between threads
+    private final int count;
+    private final String[] categories;
+    private final int categoryStart;
+    private final int difficultyStart;
+    private final ConcurrentHashMap<String, int[]> filtered = new ConcurrentHashMap<>(); // question ids per filter, built once and shared by every deck
+
+    private QuestionBank(MappedByteBuffer mapped) throws IOException {
+        this.mapped = mapped;
+        if (mapped.getInt(0) != MAGIC) {
+            throw new IOException("Not a question bank file");
+        }
+        if (mapped.getInt(4) != VERSION) {
+            throw new IOException("Unsupported question bank version: " + mapped.getInt(4));
+        }
+        count = mapped.getInt(8);
+        categories = new String[mapped.getInt(12)];
+        categoryStart = HEADER_LENGTH + count * 8;
+        difficultyStart = categoryStart + count * 2;
+        ByteBuffer table = mapped.duplicate().position((int) mapped.getLong(16));
+        for (int i = 0; i < categories.length; i++) {
+            categories[i] = readString(table);
+        }
+    }
+
+    // Maps a bank file written by a Writer
+    public static QuestionBank open(String bankPath) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(bankPath, "r"); FileChannel channel = file.getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Question bank larger than 2 GB: " + bankPath);
+            }
+            // the mapping stays valid after the channel is closed
+            return new QuestionBank(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public List<String> getCategories() {
+        return List.of(categories);
+    }
+
+    // Decodes question number id (0-based) straight from the mapped file
+    public Question get(int id) {
+        if (id < 0 || id >= count) {
+            throw new IndexOutOfBoundsException("Question " + id + " of " + count);
+        }
+        // a private view, so concurrent readers never share a position
+        ByteBuffer record = mapped.duplicate().position((int) mapped.getLong(HEADER_LENGTH + id * 8));
+        String question = readString(record);
+        String[] options = new String[record.get()];
+        for (int i = 0; i < options.length; i++) {
+            options[i] = readString(record);
+        }
+        String correctAnswer = readString(record);
+        return new Question(id, question, options, correctAnswer, categoryOf(id), difficultyOf(id));
+    }
+
+    public String categoryOf(int id) {
+        return categories[mapped.getShort(categoryStart + id * 2) & 0xFFFF];
+    }
+
+    public int difficultyOf(int id) {
+        return mapped.get(difficultyStart + id);
+    }
+
+    // Ids of the questions in a category (or ANY_CATEGORY) with the given difficulty (0 for any),
+    // in bank order. Returns null when nothing is filtered out, so an unfiltered deck needs no copy.
+    public int[] select(String category, int difficulty) {
+        boolean anyCategory = category == null || category.equals(ANY_CATEGORY);
+        if (anyCategory && difficulty == 0) {
+            return null;
+        }
+        return filtered.computeIfAbsent((anyCategory ? ANY_CATEGORY : category) + "/" + difficulty, key -> {
+            int categoryIndex = anyCategory ? -1 : Arrays.asList(categories).indexOf(category);
+            if (!anyCategory && categoryIndex < 0) {
+                return new int[0];
+            }
+            int[] ids = new int[count];
+            int matched = 0;
+            for (int id = 0; id < count; id++) {
+                if ((anyCategory || (mapped.getShort(categoryStart + id * 2) & 0xFFFF) == categoryIndex)
+                        && (difficulty == 0 || mapped.get(difficultyStart + id) == difficulty)) {
+                    ids[matched++] = id;
+                }
+            }
+            return Arrays.copyOf(ids, matched);
+        });
+    }
+
+    private static String readString(ByteBuffer record) {
+        byte[] bytes = new byte[record.getShort() & 0xFFFF];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Streams questions into a new bank file. Records go to a temporary file while the index is
+    // collected; finish() writes header, index and records and moves the bank into place.
+    public static class Writer implements AutoCloseable {
+        private final Path bankPath;
+        private final Path records;
+        private final DataOutputStream out;
+        private final Map<String, Integer> categoryIds = new LinkedHashMap<>();
+        private long[] offsets = new long[1024];
+        private short[] categoryOf = new short[1024];
+        private byte[] difficultyOf = new byte[1024];
+        private int count = 0;
+        private long position = 0;
+
+        public Writer(String bankPath) throws IOException {
+            this.bankPath = Path.of(bankPath).toAbsolutePath();
+            records = Files.createTempFile("questions", ".records");
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(records.toFile()), 1 << 16));
+        }
+
+        public void add(String question, String[] options, String correctAnswer, String category, int difficulty) throws IOException {
+            ByteArrayOutputStream record = new ByteArrayOutputStream();
+            int length = writeRecord(new DataOutputStream(record), question, options, correctAnswer);
+            addRecord(record.toByteArray(), 0, length, category, difficulty);
+        }
+
+        // Adds one record already encoded by writeRecord, so encoding can run on other threads
+        public void addRecord(byte[] data, int offset, int length, String category, int difficulty) throws IOException {
+            if (difficulty < 0 || difficulty > Byte.MAX_VALUE) {
+                throw new IOException("Difficulty out of range: " + difficulty);
+            }
+            Integer categoryId = categoryIds.get(category);
+            if (categoryId == null) {
+                if (categoryIds.size() > 0xFFFF) {
+                    throw new IOException("Too many categories");
+                }
+                categoryId = categoryIds.size();
+                categoryIds.put(category, categoryId);
+            }
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+                categoryOf = Arrays.copyOf(categoryOf, count * 2);
+                difficultyOf = Arrays.copyOf(difficultyOf, count * 2);
+            }
+            offsets[count] = position;
+            categoryOf[count] = (short) (int) categoryId;
+            difficultyOf[count] = (byte) difficulty;
+            count++;
+            out.write(data, offset, length);
+            position += length;
+        }
+
+        // Writes the bank; returns the number of questions in it
+        public int finish() throws IOException {
+            out.close();
+            long recordStart = HEADER_LENGTH + count * 11L;
+            long categoryTableOffset = recordStart + position;
+            if (categoryTableOffset > Integer.MAX_VALUE) {
+                throw new IOException("Question bank larger than 2 GB");
+            }
+            Path tempBank = Files.createTempFile(bankPath.getParent(), "questions", ".qbank.tmp");
+            try (FileChannel bank = FileChannel.open(tempBank, StandardOpenOption.WRITE);
+                 FileChannel recordChannel = FileChannel.open(records)) {
+                DataOutputStream header = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(bank), 1 << 16));
+                header.writeInt(MAGIC);
+                header.writeInt(VERSION);
+                header.writeInt(count);
+                header.writeInt(categoryIds.size());
+                header.writeLong(categoryTableOffset);
+                for (int i = 0; i < count; i++) {
+                    header.writeLong(recordStart + offsets[i]);
+                }
+                for (int i = 0; i < count; i++) {
+                    header.writeShort(categoryOf[i]);
+                }
+                header.write(difficultyOf, 0, count);
+                header.flush();
+                long copied = 0;
+                while (copied < recordChannel.size()) {
+                    copied += recordChannel.transferTo(copied, recordChannel.size() - copied, bank);
+                }
+                for (String name : categoryIds.keySet()) {
+                    writeString(header, name);
+                }
+                header.flush();
+            } catch (IOException e) {
+                Files.deleteIfExists(tempBank);
+                throw e;
+            }
+            // readers never see a half-written bank
+            Files.move(tempBank, bankPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return count;
+        }
+
+        // Drops the temporary record file; an unfinished bank is discarded
+        @Override
+        public void close() throws IOException {
+            out.close();
+            Files.deleteIfExists(records);
+        }
+    }
+
+    // Encodes one question record; returns its length in bytes
+    public static int writeRecord(DataOutputStream out, String question, String[] options, String correctAnswer) throws IOException {
+        if (options.length > Byte.MAX_VALUE) {
+            throw new IOException("Too many options: " + options.length);
+        }
+        int length = writeString(out, question) + 1;
+        out.writeByte(options.length);
+        for (String option : options) {
+            length += writeString(out, option);
+        }
+        return length + writeString(out, correctAnswer);
+    }
+
+    private static int writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IOException("Field too long for the question bank: " + bytes.length + " bytes");
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+        return 2 + bytes.length;
+    }
+}
@@ -0,0 +1,115 @@
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Decoded questions with their pre-encoded QUESTION frames and console text, shared by every room.
+// A question is decoded and encoded once on first use; after that every room playing it reuses the
+// same bytes and only patches in its own round id. Least recently used entries are dropped once the
+// cached frames and text grow past the size limit.
+public class QuestionCache {
+    private static final int ENTRY_OVERHEAD = 160; // rough bytes of objects around each frame
+
+    private final long maxBytes;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(256, 0.75f, true); // access order
+    private final ReentrantLock lock = new ReentrantLock();
+    private long bytes = 0;
+
+    // One cached question
+    public static class Entry {
+        public final Question question;
+        public final ByteBuffer frame; // read-only QUESTION frame with round id 0, see Protocol.withRoundId
+        public final String text; // what QuestionHandler.format prints
+        final int size;
+
+        Entry(Question question) {
+            this.question = question;
+            this.frame = Protocol.encodeQuestion(question, 0).asReadOnlyBuffer();
+            this.text = QuestionHandler.format(question);
+            this.size = frame.remaining() + text.length() * 2 + ENTRY_OVERHEAD;
+        }
+    }
+
+    // A question in one bank snapshot; banks compare by identity, so a reload never serves stale entries
+    private static class Key {
+        final QuestionBank bank;
+        final int id;
+
+        Key(QuestionBank bank, int id) {
+            this.bank = bank;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key key && key.bank == bank && key.id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(bank) * 31 + id;
+        }
+    }
+
+    public QuestionCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    // The cached question, decoding and encoding it on a miss
+    public Entry get(QuestionBank bank, int id) {
+        Key key = new Key(bank, id);
+        lock.lock();
+        try {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                ServerMetrics.questionCacheHits.increment();
+                return entry;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        // build outside the lock; if two rooms race on a miss, the first one stored wins
+        ServerMetrics.questionCacheMisses.increment();
+        Entry built = new Entry(bank.get(id));
+        lock.lock();
+        try {
+            Entry existing = entries.putIfAbsent(key, built);
+            if (existing != null) {
+                return existing;
+            }
+            bytes += built.size;
+            Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+            while (bytes > maxBytes && entries.size() > 1 && eldest.hasNext()) {
+                Entry evicted = eldest.next().getValue();
+                if (evicted == built) {
+                    continue;
+                }
+                eldest.remove();
+                bytes -= evicted.size;
+            }
+            return built;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long bytes() {
+        lock.lock();
+        try {
+            return bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
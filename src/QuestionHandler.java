@@ -1,58 +1,189 @@
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
+// A game's deck: a cursor over a permutation of the question bank shared by every room.
+// The bank is memory-mapped once per process and never changes; a deck only holds its filter,
+// its shuffle seed and its position, so any number of rooms can draw decks concurrently.
+// When the source file changes, a new bank is built in the background and swapped in; decks
+// already dealt keep the bank they were dealt from, so running games finish undisturbed.
 public class QuestionHandler {
-    private List<Question> questions;  // To hold questions and their options
+    private static final AtomicReference<QuestionBank> sharedBank = new AtomicReference<>(); // current snapshot, read without locking
+    private static final long RELOAD_QUIET_MILLIS = 500; // wait for writes to the source to settle before importing
+    private final QuestionBank bank;
+    private final int[] ids; // question ids passing the deck's filter, null for the whole bank
+    private final int size;
+    private final Permutation order; // null to play in bank order
+    private final long seed;
     private int currentQuestionIndex = 0;  // Track the current question
 
 
+    // Whole bank in file order
     public QuestionHandler() {
-        questions = new ArrayList<>();
+        this(loadedBank(), false, 0, QuestionBank.ANY_CATEGORY, 0);
+    }
+
+    // A deck over the questions in category (or QuestionBank.ANY_CATEGORY) with the given
+    // difficulty (0 for any), shuffled with seed when shuffle is set. Each question is drawn once.
+    public QuestionHandler(QuestionBank questionBank, boolean shuffle, long seed, String category, int difficulty) {
+        bank = questionBank;
+        ids = questionBank.select(category, difficulty);
+        size = ids == null ? questionBank.size() : ids.length;
+        order = shuffle ? new Permutation(size, seed) : null;
+        this.seed = seed;
         currentQuestionIndex = 0;
-        loadQuestions("questions.txt");
-    }
-
-    // Load questions from a file
-    private void loadQuestions(String filePath) {
-        questions = new ArrayList<>();
-        try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length == 6) {
-                    String questionText = parts[0];
-                    String[] options = new String[] {parts[1], parts[2], parts[3], parts[4]};
-                    String correctAnswer = parts[5];
-                    questions.add(new Question(questionText, options, correctAnswer));
+    }
+
+    // Maps the bank file, importing it from the CSV or JSONL source first if it is missing,
+    // older than the source or written in an older format
+    public static synchronized QuestionBank loadBank(String sourcePath, String bankPath) throws IOException {
+        File source = new File(sourcePath);
+        File bankFile = new File(bankPath);
+        boolean stale = !bankFile.exists() || (source.exists() && source.lastModified() > bankFile.lastModified());
+        QuestionBank bank = null;
+        if (!stale) {
+            try {
+                bank = QuestionBank.open(bankPath);
+            } catch (IOException e) {
+                Log.warn("Rebuilding question bank " + bankPath + ": " + e.getMessage());
+                stale = true;
+            }
+        }
+        if (stale) {
+            bank = rebuild(sourcePath, bankPath);
+        }
+        sharedBank.set(bank);
+        Log.info("Question bank " + bankPath + " mapped: " + bank.size() + " questions in "
+                + bank.getCategories().size() + " categories");
+        return bank;
+    }
+
+    // Imports the source into a new bank file and maps it. The new file replaces the old one with
+    // an atomic move, so banks that are still mapped keep reading the old file's contents.
+    private static QuestionBank rebuild(String sourcePath, String bankPath) throws IOException {
+        QuestionImporter.importFile(sourcePath, bankPath);
+        return QuestionBank.open(bankPath);
+    }
+
+    // Rebuilds the bank from its source and swaps it in for new games; on failure the current
+    // bank stays in use
+    public static synchronized boolean reload(String sourcePath, String bankPath) {
+        try {
+            QuestionBank bank = rebuild(sourcePath, bankPath);
+            QuestionBank previous = sharedBank.getAndSet(bank);
+            Log.info("Question bank reloaded: " + (previous == null ? 0 : previous.size()) + " -> " + bank.size()
+                    + " questions; running games keep their current deck");
+            return true;
+        } catch (IOException | RuntimeException e) {
+            Log.error("Question bank reload failed, keeping the current bank: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Watches the source file and reloads the bank in the background whenever it changes
+    public static void watch(String sourcePath, String bankPath) throws IOException {
+        Path source = Path.of(sourcePath).toAbsolutePath();
+        WatchService watcher = FileSystems.getDefault().newWatchService();
+        source.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        Thread thread = new Thread(() -> watchLoop(watcher, source, sourcePath, bankPath), "question-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        Log.info("Watching " + sourcePath + " for question changes");
+    }
+
+    private static void watchLoop(WatchService watcher, Path source, String sourcePath, String bankPath) {
+        try {
+            while (true) {
+                boolean changed = takeChange(watcher.take(), source);
+                // editors and copies write in several steps; import once things are quiet
+                WatchKey more;
+                while ((more = watcher.poll(RELOAD_QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    changed |= takeChange(more, source);
+                }
+                if (changed) {
+                    reload(sourcePath, bankPath);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // True if the key's events touch the source file; re-arms the key
+    private static boolean takeChange(WatchKey key, Path source) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.context() instanceof Path name && name.equals(source.getFileName())) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+
+    public static QuestionBank loadedBank() {
+        QuestionBank bank = sharedBank.get();
+        if (bank != null) {
+            return bank;
+        }
+        synchronized (QuestionHandler.class) {
+            if (sharedBank.get() == null) {
+                try {
+                    loadBank("questions.txt", "questions.qbank");
+                } catch (IOException e) {
+                    throw new IllegalStateException("Cannot load question bank: " + e.getMessage(), e);
                 }
             }
-        } catch (IOException e) {
-            e.printStackTrace();
+            return sharedBank.get();
         }
     }
 
     public boolean outOfQuestions(){
         //no questions left
-        if(questions.size() == 0){
-            return true;
+        return currentQuestionIndex >= size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public QuestionBank getBank() {
+        return bank;
+    }
+
+    // Bank id of the question under the cursor; -1 once the deck is used up
+    public int getCurrentQuestionId() {
+        if (outOfQuestions()) {
+            return -1;
         }
-        //questions left
-        return false;
+        int position = order == null ? currentQuestionIndex : order.apply(currentQuestionIndex);
+        return ids == null ? position : ids[position];
     }
 
-    public List<Question> getQuestionArray(){
-        return questions;
+    // Decodes the question under the cursor; null once the deck is used up
+    public Question getCurrentQuestion(){
+        return outOfQuestions() ? null : bank.get(getCurrentQuestionId());
     }
 
     public void nextQuestion(){
         if(!outOfQuestions()){
-            questions.remove(0);
+            currentQuestionIndex++;
         }
         else{
-            System.out.println("No more questions.");
+            Log.info("No more questions.");
         }
     }
 
@@ -66,17 +197,71 @@ public class QuestionHandler {
 
     public void questionToString() {
         if (!outOfQuestions()) {
-            Question currentQuestion = questions.get(0); // Get the question at index 0
-            StringBuilder sb = new StringBuilder();
-            sb.append("Question: ").append(currentQuestion.getQuestion()).append("\n");
-            sb.append("Options:\n");
-            String[] options = currentQuestion.getOptions();
-            for (int i = 0; i < options.length; i++) {
-                sb.append((char) ('A' + i)).append(". ").append(options[i]).append("\n");
-            }
-            System.out.println(sb.toString()); // Print the formatted question
+            Log.info(format(getCurrentQuestion())); // Print the formatted question
         } else {
-            System.out.println("No more questions available.");
+            Log.info("No more questions available.");
+        }
+    }
+
+    // Console text for a question and its lettered options
+    public static String format(Question question) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Question: ").append(question.getQuestion()).append("\n");
+        sb.append("Options:\n");
+        String[] options = question.getOptions();
+        for (int i = 0; i < options.length; i++) {
+            sb.append((char) ('A' + i)).append(". ").append(options[i]).append("\n");
+        }
+        return sb.toString();
+    }
+
+    // Seeded random permutation of [0, size) computed one position at a time, so a deck never
+    // materialises a shuffled copy of the bank. A small Feistel network permutes the smallest
+    // power-of-four range covering size; results outside [0, size) are walked until they fall inside.
+    private static class Permutation {
+        private static final int ROUNDS = 4;
+        private final int size;
+        private final int halfBits;
+        private final int halfMask;
+        private final long[] keys = new long[ROUNDS];
+
+        Permutation(int size, long seed) {
+            this.size = size;
+            int bits = 2;
+            while ((1L << bits) < size) {
+                bits += 2;
+            }
+            halfBits = bits / 2;
+            halfMask = (1 << halfBits) - 1;
+            SplittableRandom random = new SplittableRandom(seed);
+            for (int i = 0; i < ROUNDS; i++) {
+                keys[i] = random.nextLong();
+            }
+        }
+
+        int apply(int index) {
+            int value = index;
+            do {
+                value = encrypt(value);
+            } while (value >= size);
+            return value;
+        }
+
+        private int encrypt(int value) {
+            int left = value >>> halfBits;
+            int right = value & halfMask;
+            for (int round = 0; round < ROUNDS; round++) {
+                int next = left ^ (mix(right, keys[round]) & halfMask);
+                left = right;
+                right = next;
+            }
+            return (left << halfBits) | right;
+        }
+
+        private static int mix(int value, long key) {
+            long h = (value + key) * 0x9E3779B97F4A7C15L;
+            h = (h ^ (h >>> 31)) * 0xBF58476D1CE4E5B9L;
+            return (int) (h ^ (h >>> 29));
         }
     }
 }
@@ -0,0 +1,661 @@
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Builds a question bank from a CSV or JSONL source file.
+// The source is read in fixed-size chunks cut at line ends; chunks are parsed and encoded in
+// parallel on the common fork-join pool and written to the bank in file order. Only a window of
+// chunks is in flight at once, so memory stays bounded however large the source is.
+//
+// CSV: question,option1,option2,option3,option4,answer[,category,difficulty]
+//   Fields may be quoted ("a, b" with "" for a quote). Unquoted commas in older files are kept as
+//   part of the question text: any extra leading fields are joined back into the question.
+// JSONL (.jsonl files): one object per line with "question", "options" (4 strings), "answer",
+//   and optionally "category" and "difficulty".
+// Rejected lines are logged and written with their reasons to <bank>.rejected.
+public class QuestionImporter {
+    private static final int CHUNK_SIZE = 4 << 20; // bytes of source per parse task
+    private static final int OPTION_COUNT = 4; // the client shows four options
+    private static final int MAX_DIFFICULTY = 5;
+    private static final int LOGGED_REJECTIONS = 10; // the rest only go to the rejected file
+
+    // Outcome of one import
+    public static class Result {
+        public final int imported;
+        public final int rejected;
+        public final long millis;
+
+        Result(int imported, int rejected, long millis) {
+            this.imported = imported;
+            this.rejected = rejected;
+            this.millis = millis;
+        }
+    }
+
+    // Questions parsed from one chunk: encoded records back to back, plus their metadata
+    private static class ParsedChunk {
+        byte[] records = new byte[1 << 16];
+        int size = 0;
+        int recordStart = 0;
+        int[] lengths = new int[256];
+        String[] categories = new String[256];
+        byte[] difficulties = new byte[256];
+        int count = 0;
+        int lines = 0;
+        final List<String> rejections = new ArrayList<>(); // "<line in chunk>\t<reason>\t<text>"
+        // fields of the CSV line being parsed, unescaped into one scratch array reused for every line
+        byte[] scratch = new byte[1024];
+        int scratchSize = 0;
+        int[] fieldStart = new int[16];
+        int[] fieldEnd = new int[16];
+        int fields = 0;
+        String lastCategory = ""; // consecutive lines usually share a category; reuse its String
+
+        void ensure(int extra) {
+            if (size + extra > records.length) {
+                records = Arrays.copyOf(records, Math.max(records.length * 2, size + extra));
+            }
+        }
+
+        void putByte(int value) {
+            ensure(1);
+            records[size++] = (byte) value;
+        }
+
+        void putShort(int value) {
+            ensure(2);
+            records[size++] = (byte) (value >>> 8);
+            records[size++] = (byte) value;
+        }
+
+        void putBytes(byte[] src, int offset, int length) {
+            ensure(length);
+            System.arraycopy(src, offset, records, size, length);
+            size += length;
+        }
+
+        // Same layout as QuestionBank.writeRecord: [short len][bytes]
+        void putField(int field) {
+            putShort(fieldEnd[field] - fieldStart[field]);
+            putBytes(scratch, fieldStart[field], fieldEnd[field] - fieldStart[field]);
+        }
+
+        void putString(byte[] utf8) {
+            putShort(utf8.length);
+            putBytes(utf8, 0, utf8.length);
+        }
+
+        void endRecord(String category, int difficulty) {
+            if (count == lengths.length) {
+                lengths = Arrays.copyOf(lengths, count * 2);
+                categories = Arrays.copyOf(categories, count * 2);
+                difficulties = Arrays.copyOf(difficulties, count * 2);
+            }
+            lengths[count] = size - recordStart;
+            categories[count] = category;
+            difficulties[count] = (byte) difficulty;
+            count++;
+            recordStart = size;
+        }
+
+        void scratchPut(byte[] src, int offset, int length) {
+            if (scratchSize + length > scratch.length) {
+                scratch = Arrays.copyOf(scratch, Math.max(scratch.length * 2, scratchSize + length));
+            }
+            System.arraycopy(src, offset, scratch, scratchSize, length);
+            scratchSize += length;
+        }
+
+        void addField(int start) {
+            if (fields == fieldStart.length) {
+                fieldStart = Arrays.copyOf(fieldStart, fields * 2);
+                fieldEnd = Arrays.copyOf(fieldEnd, fields * 2);
+            }
+            fieldStart[fields] = start;
+            fieldEnd[fields] = scratchSize;
+            fields++;
+        }
+
+        int fieldLength(int field) {
+            return fieldEnd[field] - fieldStart[field];
+        }
+
+        boolean sameField(int a, int b) {
+            return Arrays.equals(scratch, fieldStart[a], fieldEnd[a], scratch, fieldStart[b], fieldEnd[b]);
+        }
+    }
+
+    // Thrown by the line parsers with the reason a line is rejected
+    private static class RejectedLineException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        RejectedLineException(String reason) {
+            super(reason, null, false, false);
+        }
+    }
+
+    public static Result importFile(String sourcePath, String bankPath) throws IOException {
+        long start = System.nanoTime();
+        boolean jsonl = sourcePath.toLowerCase().endsWith(".jsonl");
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int window = Math.max(2, pool.getParallelism() * 2);
+        ArrayDeque<Future<ParsedChunk>> inFlight = new ArrayDeque<>();
+        Path rejectedPath = Path.of(bankPath + ".rejected");
+        int[] totals = new int[2]; // lines seen, rejected
+        BufferedWriter rejectedOut = null;
+        int imported;
+
+        try (QuestionBank.Writer writer = new QuestionBank.Writer(bankPath);
+             InputStream in = new FileInputStream(sourcePath)) {
+            byte[] carry = new byte[0];
+            boolean first = true;
+            while (true) {
+                byte[] buffer = Arrays.copyOf(carry, Math.max(CHUNK_SIZE, carry.length * 2));
+                int filled = carry.length;
+                int read = 0;
+                while (filled < buffer.length && (read = in.read(buffer, filled, buffer.length - filled)) > 0) {
+                    filled += read;
+                }
+                boolean end = read < 0 || filled < buffer.length;
+                int cut = end ? filled : lastLineEnd(buffer, filled);
+                if (cut < 0) {
+                    carry = Arrays.copyOf(buffer, filled); // a line longer than the buffer; read more of it
+                    continue;
+                }
+                int skip = first && filled >= 3 && (buffer[0] & 0xFF) == 0xEF && (buffer[1] & 0xFF) == 0xBB && (buffer[2] & 0xFF) == 0xBF ? 3 : 0;
+                first = false;
+                byte[] chunk = buffer;
+                int chunkStart = skip;
+                int chunkEnd = cut;
+                inFlight.add(pool.submit(() -> parseChunk(chunk, chunkStart, chunkEnd, jsonl)));
+                carry = Arrays.copyOfRange(buffer, cut, filled);
+                while (inFlight.size() >= window || (end && !inFlight.isEmpty())) {
+                    rejectedOut = write(await(inFlight.poll()), writer, totals, rejectedOut, rejectedPath);
+                }
+                if (end) {
+                    break;
+                }
+            }
+            imported = writer.finish();
+        } finally {
+            for (Future<ParsedChunk> pending : inFlight) {
+                pending.cancel(true);
+            }
+            if (rejectedOut != null) {
+                rejectedOut.close();
+            }
+        }
+        if (totals[1] == 0) {
+            Files.deleteIfExists(rejectedPath); // do not leave a report from an earlier import
+        }
+        Result result = new Result(imported, totals[1], (System.nanoTime() - start) / 1_000_000);
+        Log.info("Imported " + result.imported + " questions from " + sourcePath + " to " + bankPath + " in " + result.millis + " ms"
+                + (result.rejected > 0 ? " (" + result.rejected + " lines rejected, see " + rejectedPath + ")" : ""));
+        return result;
+    }
+
+    private static ParsedChunk await(Future<ParsedChunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Import failed: " + e.getCause(), e.getCause());
+        }
+    }
+
+    // Appends a parsed chunk to the bank and reports its rejected lines; runs on the importing thread only
+    private static BufferedWriter write(ParsedChunk chunk, QuestionBank.Writer writer, int[] totals,
+                                        BufferedWriter rejectedOut, Path rejectedPath) throws IOException {
+        int offset = 0;
+        for (int i = 0; i < chunk.count; i++) {
+            writer.addRecord(chunk.records, offset, chunk.lengths[i], chunk.categories[i], chunk.difficulties[i]);
+            offset += chunk.lengths[i];
+        }
+        for (String rejection : chunk.rejections) {
+            String[] parts = rejection.split("\t", 3);
+            String report = "line " + (totals[0] + Integer.parseInt(parts[0])) + ": " + parts[1] + ": " + parts[2];
+            if (totals[1] < LOGGED_REJECTIONS) {
+                Log.warn("Rejected question " + report);
+            }
+            if (rejectedOut == null) {
+                rejectedOut = new BufferedWriter(new FileWriter(rejectedPath.toFile(), StandardCharsets.UTF_8));
+            }
+            rejectedOut.write(report);
+            rejectedOut.newLine();
+            totals[1]++;
+        }
+        totals[0] += chunk.lines;
+        return rejectedOut;
+    }
+
+    // Index just past the last '\n' before limit, or -1 if there is none
+    private static int lastLineEnd(byte[] buffer, int limit) {
+        for (int i = limit - 1; i >= 0; i--) {
+            if (buffer[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static ParsedChunk parseChunk(byte[] buffer, int start, int end, boolean jsonl) {
+        ParsedChunk chunk = new ParsedChunk();
+        int lineStart = start;
+        while (lineStart < end) {
+            int lineEnd = lineStart;
+            while (lineEnd < end && buffer[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            int textEnd = lineEnd > lineStart && buffer[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+            chunk.lines++;
+            if (!isBlank(buffer, lineStart, textEnd)) {
+                try {
+                    if (jsonl) {
+                        parseJsonLine(new String(buffer, lineStart, textEnd - lineStart, StandardCharsets.UTF_8), chunk);
+                    } else {
+                        parseCsvLine(buffer, lineStart, textEnd, chunk);
+                    }
+                } catch (RejectedLineException e) {
+                    chunk.size = chunk.recordStart; // drop whatever the rejected line had written
+                    chunk.rejections.add(chunk.lines + "\t" + e.getMessage() + "\t"
+                            + new String(buffer, lineStart, textEnd - lineStart, StandardCharsets.UTF_8));
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        return chunk;
+    }
+
+    private static boolean isBlank(byte[] buffer, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (buffer[i] != ' ' && buffer[i] != '\t') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Parses one CSV line straight from the source bytes. Commas and quotes never occur inside a
+    // multi-byte UTF-8 sequence, so fields are copied into the record without decoding them.
+    private static void parseCsvLine(byte[] buffer, int start, int end, ParsedChunk chunk) throws RejectedLineException {
+        if (!splitCsv(buffer, start, end, chunk)) {
+            // older files quote inside unquoted text ("Fight Club," ...); read those quotes as plain text
+            splitPlain(buffer, start, end, chunk);
+        }
+        int n = chunk.fields;
+        if (n < 6) {
+            throw new RejectedLineException("expected 6 or 8 fields, found " + n);
+        }
+        // the optional columns are only taken when the answer before them is one of the options
+        boolean hasExtraColumns = n >= 8 && difficultyOf(chunk, n - 1) >= 0 && isOption(chunk, n - 3, n - 7);
+        int questionFields = n - (hasExtraColumns ? 7 : 5);
+        int answer = questionFields + OPTION_COUNT;
+        if (!isOption(chunk, answer, questionFields)) {
+            throw new RejectedLineException("answer is not one of the options");
+        }
+        int questionLength = questionFields - 1; // the commas joined back in
+        boolean blank = true;
+        for (int field = 0; field < questionFields; field++) {
+            questionLength += chunk.fieldLength(field);
+            blank &= isBlank(chunk.scratch, chunk.fieldStart[field], chunk.fieldEnd[field]);
+        }
+        if (blank) {
+            throw new RejectedLineException("empty question");
+        }
+        for (int field = questionFields; field < n; field++) {
+            if (chunk.fieldLength(field) > 0xFFFF) {
+                throw new RejectedLineException("field longer than 65535 bytes");
+            }
+        }
+        if (questionLength > 0xFFFF) {
+            throw new RejectedLineException("field longer than 65535 bytes");
+        }
+        int difficulty = hasExtraColumns ? difficultyOf(chunk, n - 1) : 0;
+        if (difficulty > MAX_DIFFICULTY) {
+            throw new RejectedLineException("difficulty must be 1-" + MAX_DIFFICULTY);
+        }
+        String category = hasExtraColumns ? categoryOf(chunk, n - 2) : "";
+
+        chunk.putShort(questionLength);
+        for (int field = 0; field < questionFields; field++) {
+            if (field > 0) {
+                chunk.putByte(',');
+            }
+            chunk.putBytes(chunk.scratch, chunk.fieldStart[field], chunk.fieldLength(field));
+        }
+        chunk.putByte(OPTION_COUNT);
+        for (int field = questionFields; field <= answer; field++) {
+            chunk.putField(field);
+        }
+        chunk.endRecord(category, difficulty);
+    }
+
+    // Splits one CSV line into the chunk's fields; quoted fields may contain commas and "" for a
+    // quote. Returns false if the quoting is malformed.
+    private static boolean splitCsv(byte[] buffer, int start, int end, ParsedChunk chunk) {
+        chunk.fields = 0;
+        chunk.scratchSize = 0;
+        int i = start;
+        while (true) {
+            int fieldStart = chunk.scratchSize;
+            if (i < end && buffer[i] == '"') {
+                i++;
+                while (true) {
+                    int quote = i;
+                    while (quote < end && buffer[quote] != '"') {
+                        quote++;
+                    }
+                    if (quote >= end) {
+                        return false; // unterminated quoted field
+                    }
+                    chunk.scratchPut(buffer, i, quote - i);
+                    i = quote + 1;
+                    if (i < end && buffer[i] == '"') {
+                        chunk.scratchPut(buffer, i, 1); // "" is a quote
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                if (i < end && buffer[i] != ',') {
+                    return false; // text after the closing quote
+                }
+            } else {
+                int comma = i;
+                while (comma < end && buffer[comma] != ',') {
+                    comma++;
+                }
+                chunk.scratchPut(buffer, i, comma - i);
+                i = comma;
+            }
+            chunk.addField(fieldStart);
+            if (i >= end) {
+                return true;
+            }
+            i++; // past the comma
+        }
+    }
+
+    // Splits on every comma, with quotes as plain text
+    private static void splitPlain(byte[] buffer, int start, int end, ParsedChunk chunk) {
+        chunk.fields = 0;
+        chunk.scratchSize = 0;
+        int i = start;
+        while (true) {
+            int comma = i;
+            while (comma < end && buffer[comma] != ',') {
+                comma++;
+            }
+            int fieldStart = chunk.scratchSize;
+            chunk.scratchPut(buffer, i, comma - i);
+            chunk.addField(fieldStart);
+            if (comma >= end) {
+                return;
+            }
+            i = comma + 1;
+        }
+    }
+
+    // True if field equals one of the OPTION_COUNT fields starting at firstOption
+    private static boolean isOption(ParsedChunk chunk, int field, int firstOption) {
+        for (int option = firstOption; option < firstOption + OPTION_COUNT; option++) {
+            if (chunk.sameField(field, option)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // The field as a small whole number (spaces allowed around it), or -1 if it is not one
+    private static int difficultyOf(ParsedChunk chunk, int field) {
+        int value = -1;
+        for (int i = chunk.fieldStart[field]; i < chunk.fieldEnd[field]; i++) {
+            byte b = chunk.scratch[i];
+            if (b >= '0' && b <= '9' && value < 1000) {
+                value = (value < 0 ? 0 : value * 10) + (b - '0');
+            } else if (b != ' ') {
+                return -1;
+            }
+        }
+        return value;
+    }
+
+    private static String categoryOf(ParsedChunk chunk, int field) {
+        int start = chunk.fieldStart[field];
+        int end = chunk.fieldEnd[field];
+        while (start < end && chunk.scratch[start] == ' ') {
+            start++;
+        }
+        while (end > start && chunk.scratch[end - 1] == ' ') {
+            end--;
+        }
+        byte[] last = chunk.lastCategory.getBytes(StandardCharsets.UTF_8);
+        if (!Arrays.equals(last, 0, last.length, chunk.scratch, start, end)) {
+            chunk.lastCategory = new String(chunk.scratch, start, end - start, StandardCharsets.UTF_8);
+        }
+        return chunk.lastCategory;
+    }
+
+    private static void parseJsonLine(String line, ParsedChunk chunk) throws RejectedLineException {
+        JsonLine json = new JsonLine(line);
+        String question = null;
+        String[] options = null;
+        String answer = null;
+        String category = "";
+        int difficulty = 0;
+        json.expect('{');
+        if (!json.consume('}')) {
+            do {
+                String key = json.string();
+                json.expect(':');
+                switch (key) {
+                    case "question": question = json.string(); break;
+                    case "options": options = json.stringArray(); break;
+                    case "answer": answer = json.string(); break;
+                    case "category": category = json.string(); break;
+                    case "difficulty": difficulty = json.integer(); break;
+                    default: json.skipValue(); // unknown keys are allowed
+                }
+            } while (json.consume(','));
+            json.expect('}');
+        }
+        json.end();
+        if (question == null || options == null || answer == null) {
+            throw new RejectedLineException("missing question, options or answer");
+        }
+        add(chunk, question, options, answer, category, difficulty);
+    }
+
+    // Checks a question read from JSONL and adds it to the chunk
+    private static void add(ParsedChunk chunk, String question, String[] options, String answer,
+                            String category, int difficulty) throws RejectedLineException {
+        if (question.isBlank()) {
+            throw new RejectedLineException("empty question");
+        }
+        if (options.length != OPTION_COUNT) {
+            throw new RejectedLineException("expected " + OPTION_COUNT + " options, found " + options.length);
+        }
+        if (!Arrays.asList(options).contains(answer)) {
+            throw new RejectedLineException("answer is not one of the options");
+        }
+        if (difficulty < 0 || difficulty > MAX_DIFFICULTY) {
+            throw new RejectedLineException("difficulty must be 1-" + MAX_DIFFICULTY);
+        }
+        byte[][] fields = new byte[OPTION_COUNT + 2][];
+        fields[0] = question.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < OPTION_COUNT; i++) {
+            fields[i + 1] = options[i].getBytes(StandardCharsets.UTF_8);
+        }
+        fields[OPTION_COUNT + 1] = answer.getBytes(StandardCharsets.UTF_8);
+        for (byte[] field : fields) {
+            if (field.length > 0xFFFF) {
+                throw new RejectedLineException("field longer than 65535 bytes");
+            }
+        }
+        chunk.putString(fields[0]);
+        chunk.putByte(OPTION_COUNT);
+        for (int i = 1; i < fields.length; i++) {
+            chunk.putString(fields[i]);
+        }
+        chunk.endRecord(category, difficulty);
+    }
+
+    // Just enough of a JSON reader for one flat question object per line
+    private static class JsonLine {
+        private final String text;
+        private int i = 0;
+
+        JsonLine(String text) {
+            this.text = text;
+        }
+
+        private void skipSpace() {
+            while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+                i++;
+            }
+        }
+
+        boolean consume(char c) {
+            skipSpace();
+            if (i < text.length() && text.charAt(i) == c) {
+                i++;
+                return true;
+            }
+            return false;
+        }
+
+        void expect(char c) throws RejectedLineException {
+            if (!consume(c)) {
+                throw new RejectedLineException("invalid JSON: expected '" + c + "' at column " + (i + 1));
+            }
+        }
+
+        void end() throws RejectedLineException {
+            skipSpace();
+            if (i != text.length()) {
+                throw new RejectedLineException("invalid JSON: trailing text at column " + (i + 1));
+            }
+        }
+
+        String string() throws RejectedLineException {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (i < text.length()) {
+                char c = text.charAt(i++);
+                if (c == '"') {
+                    return sb.toString();
+                }
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                if (i >= text.length()) {
+                    break;
+                }
+                char escaped = text.charAt(i++);
+                switch (escaped) {
+                    case '"': case '\\': case '/': sb.append(escaped); break;
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'n': sb.append('\n'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'u':
+                        if (i + 4 > text.length()) {
+                            throw new RejectedLineException("invalid JSON: bad \\u escape");
+                        }
+                        try {
+                            sb.append((char) Integer.parseInt(text.substring(i, i + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw new RejectedLineException("invalid JSON: bad \\u escape");
+                        }
+                        i += 4;
+                        break;
+                    default: throw new RejectedLineException("invalid JSON: bad escape \\" + escaped);
+                }
+            }
+            throw new RejectedLineException("invalid JSON: unterminated string");
+        }
+
+        String[] stringArray() throws RejectedLineException {
+            expect('[');
+            List<String> values = new ArrayList<>(OPTION_COUNT);
+            if (!consume(']')) {
+                do {
+                    values.add(string());
+                } while (consume(','));
+                expect(']');
+            }
+            return values.toArray(new String[0]);
+        }
+
+        int integer() throws RejectedLineException {
+            skipSpace();
+            int start = i;
+            while (i < text.length() && (Character.isDigit(text.charAt(i)) || text.charAt(i) == '-')) {
+                i++;
+            }
+            try {
+                return Integer.parseInt(text.substring(start, i));
+            } catch (NumberFormatException e) {
+                throw new RejectedLineException("invalid JSON: expected a whole number at column " + (start + 1));
+            }
+        }
+
+        // Skips a value of any type for keys the importer does not use
+        void skipValue() throws RejectedLineException {
+            skipSpace();
+            if (i >= text.length()) {
+                throw new RejectedLineException("invalid JSON: missing value");
+            }
+            char c = text.charAt(i);
+            if (c == '"') {
+                string();
+            } else if (c == '[' || c == '{') {
+                char close = c == '[' ? ']' : '}';
+                i++;
+                if (!consume(close)) {
+                    do {
+                        if (c == '{') {
+                            string();
+                            expect(':');
+                        }
+                        skipValue();
+                    } while (consume(','));
+                    expect(close);
+                }
+            } else {
+                int start = i;
+                while (i < text.length() && ",}] \t".indexOf(text.charAt(i)) < 0) {
+                    i++;
+                }
+                if (start == i) {
+                    throw new RejectedLineException("invalid JSON: missing value at column " + (i + 1));
+                }
+            }
+        }
+    }
+
+    // Entry point: java QuestionImporter questions.txt questions.qbank
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: java QuestionImporter <questions.csv|questions.jsonl> <questions.qbank>");
+            System.exit(1);
+        }
+        importFile(args[0], args[1]); // logs its own summary
+    }
+}
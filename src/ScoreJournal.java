@@ -0,0 +1,360 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+// Write-ahead log of every score change and of the sessions that own the scores, so players and
+// their scores survive a restart or a crash: a client that reconnects with its session token gets
+// its ClientID, and with it its scores, back. When a session ends for good its scores are dropped,
+// so the log and the snapshots only ever hold players that can still come back.
+// Callers only queue a change; the "score-journal" thread writes whatever has queued up as one
+// batch and fsyncs it once (group commit), so answer handling never waits for the disk. A crash can
+// lose at most the batch being written. Every snapshot_interval the sessions and scores are written
+// to a snapshot and the log starts over; on startup the snapshot is loaded and the log replayed on top.
+//
+// Log record: [int length][long seq][byte kind] body [int crc32], where body is
+//   SCORE: [short len][utf-8 room][short len][utf-8 client id][int points]
+//   OPEN:  [long token][short len][utf-8 client id]
+//   CLOSE: [short len][utf-8 client id]
+// Snapshot:   [long last seq][int sessions] sessions x ([long token][utf client id])
+//             [int rooms] rooms x ([utf room][int players] players x ([utf client id][int score]))
+public class ScoreJournal {
+    private static final String LOG_FILE = "players.wal";
+    private static final String SNAPSHOT_FILE = "players.snapshot";
+    private static final byte SCORE = 1;
+    private static final byte OPEN = 2;
+    private static final byte CLOSE = 3;
+    private static final int MAX_RECORD_LENGTH = 1 << 18;
+
+    private final Path logPath;
+    private final Path snapshotPath;
+    private final FileChannel log;
+    private final long commitNanos;
+    private final long snapshotNanos;
+    private final ConcurrentLinkedQueue<Change> pending = new ConcurrentLinkedQueue<>();
+    // sessions and scores as of the last record written; rooms created later start from here
+    private final ConcurrentHashMap<String, Long> sessions = new ConcurrentHashMap<>(); // client id -> token
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, Integer>> scores = new ConcurrentHashMap<>();
+    private final ByteBuffer batch = ByteBuffer.allocate(1 << 16);
+    private final CRC32 crc = new CRC32();
+    private Thread writer; // started by start()
+    private volatile boolean running = true;
+    private long seq = 0; // last sequence written, only touched by the writer
+    private long lastSnapshot = System.nanoTime();
+    private long sinceSnapshot = 0;
+
+    private static class Change {
+        final byte kind;
+        final String room; // SCORE only
+        final String clientID;
+        final int points; // SCORE only
+        final long token; // OPEN only
+
+        Change(byte kind, String room, String clientID, int points, long token) {
+            this.kind = kind;
+            this.room = room;
+            this.clientID = clientID;
+            this.points = points;
+            this.token = token;
+        }
+    }
+
+    // Recovers the sessions and scores in dataDir; changes are queued until start() is called
+    public ScoreJournal(String dataDir, int commitMillis, int snapshotSeconds) throws IOException {
+        Files.createDirectories(Path.of(dataDir));
+        logPath = Path.of(dataDir, LOG_FILE);
+        snapshotPath = Path.of(dataDir, SNAPSHOT_FILE);
+        commitNanos = commitMillis * 1_000_000L;
+        snapshotNanos = snapshotSeconds * 1_000_000_000L;
+
+        long start = System.nanoTime();
+        long snapshotSeq = loadSnapshot();
+        log = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long replayed = replay(snapshotSeq);
+        seq = Math.max(seq, snapshotSeq);
+        int players = 0;
+        for (Map<String, Integer> room : scores.values()) {
+            players += room.size();
+        }
+        Log.info("Recovered " + sessions.size() + " sessions and " + players + " scores in " + scores.size() + " rooms (snapshot up to #" + snapshotSeq
+                + ", " + replayed + " journal records) in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    // Starts the writer thread; called by the owner once the journal is constructed
+    public synchronized void start() {
+        if (writer != null) {
+            return;
+        }
+        writer = new Thread(this::writeLoop, "score-journal");
+        writer.setDaemon(true);
+        writer.start();
+        // commit whatever is still queued when the JVM exits
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+    }
+
+    // Queues one score change; never blocks on I/O
+    public void append(String room, String clientID, int points) {
+        pending.add(new Change(SCORE, room, clientID, points, 0));
+    }
+
+    // Queues a new session, so its player can resume it after a restart
+    public void openSession(long token, String clientID) {
+        pending.add(new Change(OPEN, null, clientID, 0, token));
+    }
+
+    // Queues the end of a session; its player's scores are dropped with it
+    public void closeSession(String clientID) {
+        pending.add(new Change(CLOSE, null, clientID, 0, 0));
+    }
+
+    // Recovered sessions, client id -> token
+    public Map<String, Long> sessions() {
+        return Map.copyOf(sessions);
+    }
+
+    // Recovered and journalled scores of one room
+    public Map<String, Integer> scores(String room) {
+        Map<String, Integer> roomScores = scores.get(room);
+        return roomScores == null ? Map.of() : Map.copyOf(roomScores);
+    }
+
+    private long loadSnapshot() throws IOException {
+        if (!Files.exists(snapshotPath)) {
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotPath.toFile())))) {
+            long lastSeq = in.readLong();
+            int sessionCount = in.readInt();
+            for (int i = 0; i < sessionCount; i++) {
+                long token = in.readLong();
+                sessions.put(in.readUTF(), token);
+            }
+            int rooms = in.readInt();
+            for (int r = 0; r < rooms; r++) {
+                ConcurrentHashMap<String, Integer> room = scores.computeIfAbsent(in.readUTF(), k -> new ConcurrentHashMap<>());
+                int players = in.readInt();
+                for (int p = 0; p < players; p++) {
+                    room.put(in.readUTF(), in.readInt());
+                }
+            }
+            return lastSeq;
+        }
+    }
+
+    // Applies log records newer than the snapshot; a torn or corrupt tail from a crash is cut off
+    private long replay(long snapshotSeq) throws IOException {
+        long replayed = 0;
+        long validEnd = 0;
+        // not closed: closing the stream would close the log channel too
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(log.position(0)), 1 << 16));
+        try {
+            while (true) {
+                int length = in.readInt();
+                if (length < 8 + 1 + 2 || length > MAX_RECORD_LENGTH) {
+                    break;
+                }
+                byte[] body = new byte[length];
+                in.readFully(body);
+                int storedCrc = in.readInt();
+                crc.reset();
+                crc.update(body);
+                if ((int) crc.getValue() != storedCrc) {
+                    break;
+                }
+                ByteBuffer record = ByteBuffer.wrap(body);
+                long recordSeq = record.getLong();
+                byte kind = record.get();
+                Change change;
+                if (kind == SCORE) {
+                    String room = getString(record);
+                    change = new Change(kind, room, getString(record), record.getInt(), 0);
+                } else if (kind == OPEN) {
+                    long token = record.getLong();
+                    change = new Change(kind, null, getString(record), 0, token);
+                } else if (kind == CLOSE) {
+                    change = new Change(kind, null, getString(record), 0, 0);
+                } else {
+                    break;
+                }
+                validEnd += 4 + length + 4;
+                seq = recordSeq;
+                if (recordSeq > snapshotSeq) {
+                    apply(change);
+                    replayed++;
+                }
+            }
+        } catch (EOFException e) {
+            // end of the log, possibly in the middle of a record
+        }
+        if (validEnd < log.size()) {
+            Log.warn("Score journal: discarding " + (log.size() - validEnd) + " bytes of incomplete records");
+            log.truncate(validEnd);
+        }
+        log.position(validEnd);
+        sinceSnapshot = replayed;
+        return replayed;
+    }
+
+    private void apply(Change change) {
+        switch (change.kind) {
+            case SCORE:
+                scores.computeIfAbsent(change.room, k -> new ConcurrentHashMap<>()).merge(change.clientID, change.points, Integer::sum);
+                break;
+            case OPEN:
+                sessions.put(change.clientID, change.token);
+                break;
+            case CLOSE:
+                sessions.remove(change.clientID);
+                for (Map<String, Integer> room : scores.values()) {
+                    room.remove(change.clientID);
+                }
+                scores.values().removeIf(Map::isEmpty);
+                break;
+        }
+    }
+
+    private void writeLoop() {
+        while (running) {
+            long batchStart = System.nanoTime();
+            try {
+                if (commit() == 0) {
+                    LockSupport.parkNanos(commitNanos); // idle: wait for the next group to build up
+                } else {
+                    long rest = commitNanos - (System.nanoTime() - batchStart);
+                    if (rest > 0) {
+                        LockSupport.parkNanos(rest); // let the next group collect
+                    }
+                }
+                if (sinceSnapshot > 0 && System.nanoTime() - lastSnapshot >= snapshotNanos) {
+                    snapshot();
+                }
+            } catch (IOException e) {
+                Log.error("Score journal write failed: " + e.getMessage());
+                LockSupport.parkNanos(1_000_000_000L);
+            }
+        }
+    }
+
+    // Writes every queued change and fsyncs once; returns how many were written
+    private synchronized int commit() throws IOException {
+        int written = 0;
+        Change change;
+        while ((change = pending.poll()) != null) {
+            byte[] room = change.kind == SCORE ? change.room.getBytes(StandardCharsets.UTF_8) : null;
+            byte[] clientID = change.clientID.getBytes(StandardCharsets.UTF_8);
+            int length = 8 + 1 + 2 + clientID.length
+                    + (change.kind == SCORE ? 2 + room.length + 4 : change.kind == OPEN ? 8 : 0);
+            if (length > MAX_RECORD_LENGTH) {
+                Log.error("Score journal: record too long, dropped for " + change.clientID);
+                continue;
+            }
+            if (batch.remaining() < 4 + length + 4) {
+                flush();
+            }
+            int start = batch.position();
+            batch.putInt(length);
+            batch.putLong(++seq);
+            batch.put(change.kind);
+            if (change.kind == SCORE) {
+                batch.putShort((short) room.length).put(room);
+                batch.putShort((short) clientID.length).put(clientID);
+                batch.putInt(change.points);
+            } else {
+                if (change.kind == OPEN) {
+                    batch.putLong(change.token);
+                }
+                batch.putShort((short) clientID.length).put(clientID);
+            }
+            crc.reset();
+            crc.update(batch.array(), start + 4, length);
+            batch.putInt((int) crc.getValue());
+            apply(change);
+            written++;
+        }
+        if (written > 0) {
+            flush();
+            log.force(false); // one fsync for the whole group
+            sinceSnapshot += written;
+            ServerMetrics.journalCommits.increment();
+            ServerMetrics.journalRecords.add(written);
+        }
+        return written;
+    }
+
+    private void flush() throws IOException {
+        batch.flip();
+        while (batch.hasRemaining()) {
+            log.write(batch);
+        }
+        batch.clear();
+    }
+
+    // Writes all sessions and scores to a new snapshot, then starts the log over
+    private synchronized void snapshot() throws IOException {
+        Path temp = snapshotPath.resolveSibling(SNAPSHOT_FILE + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            out.writeLong(seq);
+            Map<String, Long> open = Map.copyOf(sessions);
+            out.writeInt(open.size());
+            for (Map.Entry<String, Long> session : open.entrySet()) {
+                out.writeLong(session.getValue());
+                out.writeUTF(session.getKey());
+            }
+            out.writeInt(scores.size());
+            for (Map.Entry<String, ConcurrentHashMap<String, Integer>> room : scores.entrySet()) {
+                Map<String, Integer> players = Map.copyOf(room.getValue());
+                out.writeUTF(room.getKey());
+                out.writeInt(players.size());
+                for (Map.Entry<String, Integer> player : players.entrySet()) {
+                    out.writeUTF(player.getKey());
+                    out.writeInt(player.getValue());
+                }
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(temp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // every record is in the snapshot now; a crash before this leaves them to be skipped by seq
+        log.truncate(0);
+        log.position(0);
+        log.force(true);
+        lastSnapshot = System.nanoTime();
+        sinceSnapshot = 0;
+        Log.debug("Score snapshot written up to #" + seq);
+    }
+
+    // Commits what is still queued and stops the writer
+    public void close() {
+        running = false;
+        try {
+            commit();
+        } catch (IOException e) {
+            Log.error("Score journal: final commit failed: " + e.getMessage());
+        }
+    }
+
+    private static String getString(ByteBuffer record) {
+        int length = record.getShort() & 0xFFFF;
+        String value = new String(record.array(), record.position(), length, StandardCharsets.UTF_8);
+        record.position(record.position() + length);
+        return value;
+    }
+}
@@ -1,41 +1,109 @@
 import java.io.*;
+import java.lang.management.ManagementFactory;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
 import java.util.Properties;
 import java.util.Scanner;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.JMException;
 
 public class Server {
 
     private static int TCP_PORT;
+    private static int BACKLOG = 15; // pending connections the OS will queue
+    private static int MAX_CONNECTIONS = 10000; // connected players allowed at once
+    private static int MAX_QUEUE_DEPTH = 64; // frames a client may have waiting before it is evicted
+    private static int MAX_QUEUE_LAG_MS = 5000; // how long a queued frame may wait before the client is evicted
+    private static String IO_MODE = "blocking"; // "blocking" (thread per client) or "nio"
+    private static int IO_THREADS = 2; // selector threads in nio mode
+    private static String THREAD_MODE = "platform"; // "platform" or "virtual" threads for handlers and timers
+    private static ExecutorService taskExecutor; // shared executor for client handlers, writers and listeners
+    private static int SCHEDULER_THREADS = 2; // threads ticking the phase timers of every room
+    private static ScheduledExecutorService phaseScheduler;
+    private static int POLLING_SECONDS = 15; // length of the buzz-in phase
+    private static int ANSWERING_SECONDS = 10; // length of the answer phase
+    private static AtomicInteger activeConnections = new AtomicInteger();
+    private static final long CLOCK_ORIGIN = System.nanoTime(); // zero of the server clock sent to clients
     private static int UDP_PORT = 2000; // port for UDP
-    private static ConcurrentLinkedQueue<String> udpMessageQueue = new ConcurrentLinkedQueue<>();
+    private static int MAX_ROOMS = 500; // concurrent game rooms allowed in this process
+    private static boolean SHUFFLE_QUESTIONS = true; // play each game's deck in a random order
+    private static long QUESTION_SEED = 0; // fixed shuffle seed for reproducible decks, 0 for a new seed every game
+    private static String QUESTIONS_FILE = "questions.txt"; // CSV or JSONL source of the question bank
+    private static String QUESTION_BANK_FILE = "questions.qbank"; // memory-mapped bank built from QUESTIONS_FILE
+    private static int QUESTION_CACHE_MB = 16; // memory for pre-encoded question frames shared by all rooms
+    private static QuestionCache questionCache;
+    private static boolean WATCH_QUESTIONS = true; // reload the bank when QUESTIONS_FILE changes
+    private static String DATA_DIR = "data"; // score journal, snapshots and game history
+    private static int JOURNAL_COMMIT_MS = 2; // how long score changes collect before one fsync
+    private static int SNAPSHOT_SECONDS = 60; // how often scores are snapshotted and the journal restarted
+    private static ScoreJournal scoreJournal;
+    private static int SESSION_RESUME_SECONDS = 120; // how long a dropped player can reconnect as themselves
+    private static SessionRegistry sessions;
+    private static GameHistory gameHistory;
+    private static int METRICS_PORT = 9100; // loopback HTTP port for the metrics text endpoint, 0 for JMX only
+    private static final String DEFAULT_ROOM = "lobby"; // room for clients that do not pick one
     private static ConcurrentHashMap<String, ClientHandler> connectedClients = new ConcurrentHashMap<>(); // keeps track of clients
-    private static ConcurrentHashMap<String, Integer> clientScores = new ConcurrentHashMap<>();
-    private static QuestionHandler questionHandler = new QuestionHandler();
-    private static boolean gameState;
+    private static ConcurrentHashMap<String, GameRoom> rooms = new ConcurrentHashMap<>(); // games hosted by this server
 
     //main handles connection of new clients
     public static void main(String[] args) {
+        loadServerConfig("config/serverConfig.txt");
+        taskExecutor = THREAD_MODE.equals("virtual")
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newCachedThreadPool();
+        phaseScheduler = Executors.newScheduledThreadPool(SCHEDULER_THREADS);
+        questionCache = new QuestionCache(QUESTION_CACHE_MB * 1024L * 1024L);
+        try {
+            QuestionHandler.loadBank(QUESTIONS_FILE, QUESTION_BANK_FILE);
+            if (WATCH_QUESTIONS) {
+                QuestionHandler.watch(QUESTIONS_FILE, QUESTION_BANK_FILE);
+            }
+        } catch (IOException e) {
+            System.err.println("Error loading question bank: " + e.getMessage());
+            System.exit(1);
+        }
+        try {
+            // recover sessions and scores before any room exists, so every room starts from them
+            scoreJournal = new ScoreJournal(DATA_DIR, JOURNAL_COMMIT_MS, SNAPSHOT_SECONDS);
+            scoreJournal.start();
+            gameHistory = new GameHistory(DATA_DIR);
+        } catch (IOException e) {
+            System.err.println("Error opening score journal in " + DATA_DIR + ": " + e.getMessage());
+            System.exit(1);
+        }
+        sessions = new SessionRegistry(SESSION_RESUME_SECONDS, scoreJournal);
+        sessions.restore();
 
-        // establish connection, port #, max connections, IP addresses
-        try (ServerSocket serverSocket = new ServerSocket(1000, 15, InetAddress.getByName("0.0.0.0"))) {
-            loadServerConfig("config/serverConfig.txt");
-            System.out.println("Server started. Waiting for a client...");
+        rooms.put(DEFAULT_ROOM, new GameRoom(DEFAULT_ROOM));
+        try {
+            MetricsEndpoint.start(METRICS_PORT);
+        } catch (IOException | JMException e) {
+            Log.warn("Metrics endpoint not started: " + e.getMessage()); // the game runs without it
+        }
 
-            //gamestart handles game logic
-            new Thread(() -> gameStart()).start();
-            // Start a thread to listen for server terminal commands
-            new Thread(() -> listenForCommands()).start();
-            while (true) {
-                Socket clientSocket = serverSocket.accept();
-                System.out.println("Client connected: " + clientSocket.getInetAddress());
+        // Start a thread to listen for server terminal commands
+        new Thread(() -> listenForCommands()).start();
+        // One UDP listener serves every question
+        startTask(() -> acceptUDPMessage());
 
-                // Create a new thread to handle the client
-                ClientHandler clientHandler = new ClientHandler(clientSocket);
-                new Thread(clientHandler).start(); // Start the thread
+        try {
+            if (IO_MODE.equals("nio")) {
+                // a few selector threads own every player socket
+                new NioServer(TCP_PORT, BACKLOG, IO_THREADS).start();
+            } else {
+                acceptBlockingClients();
             }
-
         } catch (SocketException e) {
             // Handle errors during socket creation
             System.err.println("Error creating or configuring socket: " + e.getMessage());
@@ -45,115 +113,334 @@ public class Server {
         }
     }
 
+    // Original thread-per-client accept loop
+    private static void acceptBlockingClients() throws IOException {
+        // establish connection, port #, max connections, IP addresses
+        try (ServerSocket serverSocket = new ServerSocket(TCP_PORT, BACKLOG, InetAddress.getByName("0.0.0.0"))) {
+            System.out.println("Server started. Waiting for a client...");
+            while (true) {
+                Socket clientSocket = serverSocket.accept();
+                if (!tryAcquireConnection()) {
+                    Log.warn("Connection limit reached, refusing " + clientSocket.getInetAddress());
+                    clientSocket.close();
+                    continue;
+                }
+                Log.debug("Client connected: " + clientSocket.getInetAddress());
+
+                // Run the client on the shared executor
+                ClientHandler clientHandler = new ClientHandler(clientSocket);
+                startTask(clientHandler);
+            }
+        }
+    }
+
+    // The server clock of PHASE deadlines and PONG replies: monotonic milliseconds since startup
+    static long clockMillis() {
+        return (System.nanoTime() - CLOCK_ORIGIN) / 1_000_000;
+    }
+
+    static ScheduledExecutorService getPhaseScheduler() {
+        return phaseScheduler;
+    }
+
+    static int getPollingSeconds() {
+        return POLLING_SECONDS;
+    }
+
+    static int getAnsweringSeconds() {
+        return ANSWERING_SECONDS;
+    }
+
+    static QuestionCache getQuestionCache() {
+        return questionCache;
+    }
+
+    static ScoreJournal getScoreJournal() {
+        return scoreJournal;
+    }
+
+    // Stores a finished game off the calling thread, since the history file is synced on every write
+    static void recordGame(GameHistory.Game game) {
+        startTask(() -> {
+            try {
+                gameHistory.record(game);
+            } catch (IOException e) {
+                Log.error("Could not record game in " + game.room + ": " + e.getMessage());
+            }
+        });
+    }
+
+    // Deals a new deck over the shared question bank for one game
+    static QuestionHandler newDeck(String category, int difficulty) {
+        long seed = QUESTION_SEED != 0 ? QUESTION_SEED : ThreadLocalRandom.current().nextLong();
+        return new QuestionHandler(QuestionHandler.loadedBank(), SHUFFLE_QUESTIONS, seed, category, difficulty);
+    }
+
+    // Runs a task on the shared executor (a virtual thread in virtual mode)
+    static Future<?> startTask(Runnable task) {
+        return taskExecutor.submit(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                // the executor would otherwise swallow this silently
+                Log.error("Task failed", e);
+                throw e;
+            }
+        });
+    }
+
+    // Prints thread count and heap usage so thread modes can be compared under load
+    private static void printStats() {
+        Runtime runtime = Runtime.getRuntime();
+        long usedHeap = (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024);
+        System.out.println("Clients=" + connectedClients.size()
+                + ", Sessions=" + sessions.size()
+                + ", Rooms=" + rooms.size()
+                + ", Connections=" + activeConnections.get()
+                + ", LiveThreads=" + ManagementFactory.getThreadMXBean().getThreadCount()
+                + ", HeapUsedMB=" + usedHeap
+                + ", ThreadMode=" + THREAD_MODE + ", IOMode=" + IO_MODE
+                + ", QuestionCacheEntries=" + questionCache.size() + ", QuestionCacheKB=" + questionCache.bytes() / 1024);
+        System.out.println(ServerMetrics.report(connectedClients.values()));
+    }
+
+    // Reserves a slot for a new connection, false once MAX_CONNECTIONS is reached
+    static boolean tryAcquireConnection() {
+        while (true) {
+            int current = activeConnections.get();
+            if (current >= MAX_CONNECTIONS) {
+                ServerMetrics.connectionsRefused.increment();
+                return false;
+            }
+            if (activeConnections.compareAndSet(current, current + 1)) {
+                ServerMetrics.connectionsAccepted.increment();
+                return true;
+            }
+        }
+    }
+
+    static int getConnectionCount() {
+        return activeConnections.get();
+    }
+
+    static Iterable<ClientHandler> getConnectedClients() {
+        return connectedClients.values();
+    }
+
+    static int getSessionCount() {
+        return sessions.size();
+    }
+
+    static int getRoomCount() {
+        return rooms.size();
+    }
+
+    // Frees the slot of a closed connection
+    static void releaseConnection() {
+        activeConnections.decrementAndGet();
+    }
+
     // Method to listen for server terminal commands
     private static void listenForCommands() {
         Scanner scanner = new Scanner(System.in);
-        while (true) {
+        // player must press enter on server to begin game
+        System.out.println("When all players are connected, press enter to begin game (or START:<room>[:<category>[:<difficulty>]] for another room).");
+        while (scanner.hasNextLine()) {
             String command = scanner.nextLine().trim();
-            if (command.startsWith("KILL:")) {
+            if (command.isEmpty() || command.equals("START")) {
+                startRoom(DEFAULT_ROOM, QuestionBank.ANY_CATEGORY, 0);
+            } else if (command.startsWith("START:")) {
+                String[] parts = command.substring(6).split(":");
+                try {
+                    startRoom(parts[0].trim(), parts.length > 1 ? parts[1].trim() : QuestionBank.ANY_CATEGORY,
+                            parts.length > 2 ? Integer.parseInt(parts[2].trim()) : 0);
+                } catch (NumberFormatException e) {
+                    System.out.println("Invalid difficulty: " + parts[2].trim());
+                }
+            } else if (command.equals("RELOAD")) {
+                // rebuild off the console thread; games keep running on their current decks
+                startTask(() -> QuestionHandler.reload(QUESTIONS_FILE, QUESTION_BANK_FILE));
+            } else if (command.equals("CATEGORIES")) {
+                System.out.println("Categories: " + QuestionHandler.loadedBank().getCategories());
+            } else if (command.equals("ROOMS")) {
+                rooms.values().forEach(room -> System.out.println("Room " + room.getName() + ": "
+                        + room.playerCount() + " players, " + (room.getGameState() ? "in game" : "waiting")));
+            } else if (command.startsWith("KILL:")) {
                 String clientID = command.substring(5).trim(); // Extract the ClientID
                 terminateClient(clientID); // Call the terminateClient method
+            } else if (command.equals("STATS")) {
+                printStats();
+            } else if (command.equals("HISTORY") || command.startsWith("HISTORY:")) {
+                printHistory(command.length() > 8 ? command.substring(8).trim() : null);
             } else {
                 System.out.println("Unknown command: " + command);
             }
         }
     }
 
+    // Prints the latest finished games, of one room or of all rooms
+    private static void printHistory(String roomName) {
+        try {
+            List<GameHistory.Game> games = gameHistory.latest(roomName, 10);
+            if (games.isEmpty()) {
+                System.out.println("No finished games" + (roomName == null ? "." : " in room " + roomName + "."));
+            }
+            games.forEach(System.out::println);
+        } catch (IOException e) {
+            System.err.println("Error reading game history: " + e.getMessage());
+        }
+    }
+
+    // Starts the game in a room with a deck of the given category and difficulty
+    private static void startRoom(String roomName, String category, int difficulty) {
+        GameRoom room = rooms.get(roomName);
+        if (room == null) {
+            System.err.println("Room " + roomName + " not found.");
+        } else if (!room.start(category, difficulty)) {
+            System.err.println("Room " + roomName + " is already in a game.");
+        }
+    }
+
+    // Moves a client into the named room, creating it if needed
+    static void joinRoom(ClientHandler clientHandler, String roomName) {
+        if (roomName.isEmpty() || (!rooms.containsKey(roomName) && rooms.size() >= MAX_ROOMS)) {
+            Log.warn("Cannot open room '" + roomName + "', using " + DEFAULT_ROOM);
+            roomName = DEFAULT_ROOM;
+        }
+        leaveRoom(clientHandler);
+        // joining inside compute keeps the room from being removed as empty at the same moment
+        GameRoom room = rooms.compute(roomName, (name, existing) -> {
+            GameRoom joined = existing != null ? existing : new GameRoom(name);
+            joined.join(clientHandler);
+            return joined;
+        });
+        clientHandler.setRoom(room);
+    }
+
+    // Takes a client out of its room and drops the room once it is empty and idle
+    static void leaveRoom(ClientHandler clientHandler) {
+        GameRoom room = clientHandler.getRoom();
+        if (room == null) {
+            return;
+        }
+        clientHandler.setRoom(null);
+        room.leave(clientHandler);
+        dropIfIdle(room);
+    }
+
+    // Removes a room other than the lobby if it is empty and no game is running in it
+    static void dropIfIdle(GameRoom room) {
+        if (!room.getName().equals(DEFAULT_ROOM)) {
+            rooms.computeIfPresent(room.getName(), (name, existing) ->
+                    existing == room && existing.isEmpty() && !existing.getGameState() ? null : existing);
+        }
+    }
+
+    // Called by the session registry once a player can never come back: drops them from every
+    // room's rankings, as nobody can claim their score any more. A room with a game running
+    // keeps them until that game is over.
+    static void sessionEnded(String clientID) {
+        for (GameRoom room : rooms.values()) {
+            room.forget(clientID);
+        }
+    }
+
+    // Whether a session, connected or waiting to be resumed, plays under this ClientID
+    static boolean hasSession(String clientID) {
+        return sessions.contains(clientID);
+    }
+
     // Method to send a KILL signal to a specific client
     public static void terminateClient(String clientID) {
         ClientHandler clientHandler = connectedClients.get(clientID);
         if (clientHandler != null) {
-            clientHandler.sendMessage("KILL");
-            System.out.println("Sent KILL signal to ClientID=" + clientID);
+            clientHandler.sendFrame(Protocol.signal(Protocol.KILL));
+            Log.info("Sent KILL signal to ClientID=" + clientID);
             connectedClients.remove(clientID); // Remove the client from the connected clients map
+            leaveRoom(clientHandler);
+            sessions.remove(clientHandler.getSession()); // a killed player cannot resume
         } else {
             System.err.println("ClientID=" + clientID + " not found.");
         }
     }
 
+    // Listens for buzzes for the whole server lifetime on one channel and one reused buffer.
+    // Each buzz is timestamped on receipt and judged right away by the arbiter.
     public static void acceptUDPMessage() {
-        // UDP message acceptance
-        try (DatagramSocket socket = new DatagramSocket(UDP_PORT)) {
-            System.out.println("Listening for UDP messages on port " + UDP_PORT);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1024);
+        try (DatagramChannel channel = DatagramChannel.open()) {
+            channel.bind(new InetSocketAddress(UDP_PORT));
+            Log.info("Listening for UDP messages on port " + UDP_PORT);
             while (true) {
-                byte[] buffer = new byte[1024];
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-                socket.receive(packet); // Receive the UDP packet
+                buffer.clear();
+                channel.receive(buffer); // Receive the UDP packet
+                long receivedAt = System.nanoTime();
+                buffer.flip();
+                ServerMetrics.bytesIn.add(buffer.remaining());
+                if (buffer.remaining() != Protocol.BUZZ_LENGTH) {
+                    continue; // not a buzz
+                }
 
-                // Extract the message from the packet
-                String clientID = new String(packet.getData(), 0, packet.getLength()).trim();
-                System.out.println("Received UDP message: ClientID=" + clientID);
+                int roundId = buffer.getInt();
+                long token = buffer.getLong();
 
-                // Add the ClientID directly to the queue
-                udpMessageQueue.add(clientID);
-                System.out.println("Added to queue: ClientID=" + clientID);
+                // Late, duplicate and out-of-phase buzzes are dropped by the room's arbiter
+                ClientHandler clientHandler = sessions.handlerFor(token);
+                GameRoom room = clientHandler == null ? null : clientHandler.getRoom();
+                if (room == null) {
+                    ServerMetrics.unknownBuzzes.increment(); // forged, expired or from a player between rooms
+                    continue;
+                }
+                if (Log.isDebugEnabled()) {
+                    Log.debug("Received UDP message: ClientID=" + clientHandler.getclientID() + ", Round=" + roundId);
+                }
+                room.getBuzzArbiter().onBuzz(roundId, clientHandler, receivedAt);
             }
         } catch (IOException e) {
             // Handle errors related to UDP communication
-            System.err.println("Error receiving UDP message: " + e.getMessage());
-        }
-    }
-
-    // handles UDP message queue in separate thread
-    public static class UDPThread implements Runnable {
-        @Override
-        public void run() {
-            String clientID = udpMessageQueue.poll();
-            if (clientID == null) {
-                System.err.println("No messages in the UDP queue.");
-                return;
-            }
-
-            clientID = clientID.trim(); // Ensure no extra spaces
-            System.out.println("Looking up ClientID=" + clientID + " in connectedClients.");
-            ClientHandler clientHandler = connectedClients.get(clientID);
-            if (clientHandler != null) {
-                clientHandler.sendMessage("ack");
-                clientHandler.handleAck(true); // Mark that the client received a positive ack
-                System.out.println("Sent 'ack' to ClientID=" + clientID);
-            } else {
-                System.err.println("No ClientHandler found for ClientID=" + clientID);
-            }
-
-            while (!udpMessageQueue.isEmpty()) {
-                clientID = udpMessageQueue.poll().trim();
-                System.out.println("Looking up ClientID=" + clientID + " in connectedClients.");
-                clientHandler = connectedClients.get(clientID);
-                if (clientHandler != null) {
-                    clientHandler.sendMessage("negative-ack");
-                    clientHandler.handleAck(false); // Mark that the client received a negative ack
-                    System.out.println("Sent 'negative-ack' to ClientID=" + clientID);
-                } else {
-                    System.err.println("No ClientHandler found for ClientID=" + clientID);
-                }
-            }
-
-            // Sleep briefly to avoid busy-waiting
-            try {
-                Thread.sleep(10);
-            } catch (InterruptedException e) {
-                System.err.println("UDPThread interrupted: " + e.getMessage());
-            }
+            Log.error("Error receiving UDP message: " + e.getMessage());
         }
     }
 
-    public static String getClientID(String message) {
-        if (message != null) {
-            String[] parts = message.split(":");
-            if (parts.length >= 2) {
-                return parts[1].trim(); // Extract the clientID (second part of the message)
-            }
-        }
-        return null; // Return null if the message format is invalid
-    }
-
     // Load server configuration from the provided file path
     private static void loadServerConfig(String serverConfigPath) {
         try {
             Properties props = new Properties();
             props.load(new FileInputStream(serverConfigPath));
             TCP_PORT = Integer.parseInt(props.getProperty("port"));
-            System.out.println("Loaded server configuration: PORT=" + TCP_PORT);
+            BACKLOG = Integer.parseInt(props.getProperty("backlog", String.valueOf(BACKLOG)));
+            MAX_CONNECTIONS = Integer.parseInt(props.getProperty("max_connections", String.valueOf(MAX_CONNECTIONS)));
+            IO_MODE = props.getProperty("io_mode", IO_MODE).trim();
+            IO_THREADS = Integer.parseInt(props.getProperty("io_threads", String.valueOf(IO_THREADS)));
+            THREAD_MODE = props.getProperty("thread_mode", THREAD_MODE).trim();
+            MAX_QUEUE_DEPTH = Integer.parseInt(props.getProperty("max_queue_depth", String.valueOf(MAX_QUEUE_DEPTH)));
+            MAX_QUEUE_LAG_MS = Integer.parseInt(props.getProperty("max_queue_lag_ms", String.valueOf(MAX_QUEUE_LAG_MS)));
+            MAX_ROOMS = Integer.parseInt(props.getProperty("max_rooms", String.valueOf(MAX_ROOMS)));
+            SCHEDULER_THREADS = Integer.parseInt(props.getProperty("scheduler_threads", String.valueOf(SCHEDULER_THREADS)));
+            POLLING_SECONDS = Integer.parseInt(props.getProperty("polling_seconds", String.valueOf(POLLING_SECONDS)));
+            ANSWERING_SECONDS = Integer.parseInt(props.getProperty("answering_seconds", String.valueOf(ANSWERING_SECONDS)));
+            SHUFFLE_QUESTIONS = Boolean.parseBoolean(props.getProperty("shuffle_questions", String.valueOf(SHUFFLE_QUESTIONS)).trim());
+            QUESTION_SEED = Long.parseLong(props.getProperty("question_seed", String.valueOf(QUESTION_SEED)).trim());
+            QUESTIONS_FILE = props.getProperty("questions_file", QUESTIONS_FILE).trim();
+            QUESTION_BANK_FILE = props.getProperty("question_bank_file", QUESTION_BANK_FILE).trim();
+            QUESTION_CACHE_MB = Integer.parseInt(props.getProperty("question_cache_mb", String.valueOf(QUESTION_CACHE_MB)).trim());
+            WATCH_QUESTIONS = Boolean.parseBoolean(props.getProperty("watch_questions", String.valueOf(WATCH_QUESTIONS)).trim());
+            DATA_DIR = props.getProperty("data_dir", DATA_DIR).trim();
+            JOURNAL_COMMIT_MS = Integer.parseInt(props.getProperty("journal_commit_ms", String.valueOf(JOURNAL_COMMIT_MS)).trim());
+            SNAPSHOT_SECONDS = Integer.parseInt(props.getProperty("snapshot_seconds", String.valueOf(SNAPSHOT_SECONDS)).trim());
+            SESSION_RESUME_SECONDS = Integer.parseInt(props.getProperty("session_resume_seconds", String.valueOf(SESSION_RESUME_SECONDS)).trim());
+            METRICS_PORT = Integer.parseInt(props.getProperty("metrics_port", String.valueOf(METRICS_PORT)).trim());
+            Log.setLevel(props.getProperty("log_level", "INFO"));
+            System.out.println("Loaded server configuration: PORT=" + TCP_PORT + ", BACKLOG=" + BACKLOG
+                    + ", MAX_CONNECTIONS=" + MAX_CONNECTIONS + ", IO_MODE=" + IO_MODE + ", IO_THREADS=" + IO_THREADS + ", THREAD_MODE=" + THREAD_MODE
+                    + ", MAX_QUEUE_DEPTH=" + MAX_QUEUE_DEPTH + ", MAX_QUEUE_LAG_MS=" + MAX_QUEUE_LAG_MS + ", MAX_ROOMS=" + MAX_ROOMS
+                    + ", SCHEDULER_THREADS=" + SCHEDULER_THREADS + ", POLLING_SECONDS=" + POLLING_SECONDS + ", ANSWERING_SECONDS=" + ANSWERING_SECONDS
+                    + ", SHUFFLE_QUESTIONS=" + SHUFFLE_QUESTIONS + ", QUESTION_SEED=" + QUESTION_SEED
+                    + ", QUESTIONS_FILE=" + QUESTIONS_FILE + ", QUESTION_BANK_FILE=" + QUESTION_BANK_FILE
+                    + ", QUESTION_CACHE_MB=" + QUESTION_CACHE_MB + ", WATCH_QUESTIONS=" + WATCH_QUESTIONS
+                    + ", DATA_DIR=" + DATA_DIR + ", JOURNAL_COMMIT_MS=" + JOURNAL_COMMIT_MS + ", SNAPSHOT_SECONDS=" + SNAPSHOT_SECONDS
+                    + ", SESSION_RESUME_SECONDS=" + SESSION_RESUME_SECONDS
+                    + ", METRICS_PORT=" + METRICS_PORT);
         } catch (IOException | NumberFormatException e) {
             // Handle errors related to loading or parsing the config file
             System.err.println("Error reading server config file: " + e.getMessage());
@@ -163,247 +450,295 @@ public class Server {
 
     // Handles communication with a single client connected to the server
     static class ClientHandler implements Runnable {
-        private Socket clientSocket; // The socket used for communicating with the client
-        private ObjectOutputStream objectOut; // Used to send objects to the client
-        private PrintWriter out; // Used to send messages to the client
-        private String clientID; // Client ID
-        private boolean hasSubmittedAnswer = false; // Flag to track if the client has submitted an answer
-        private boolean receivedAck = false; // Flag to track if the client received a positive ack
+        private Socket clientSocket; // The socket used for communicating with the client (blocking mode)
+        private NioServer.Connection connection; // The selector-owned connection (nio mode)
+        private WritableByteChannel frameOut; // Used to send protocol frames to the client (blocking mode)
+        private String clientID; // Client ID, issued with the session
+        private SessionRegistry.Session session; // identity this connection plays under
+        private volatile GameRoom room; // room this client plays in
+        private final OutboundQueue outbound = new OutboundQueue(MAX_QUEUE_DEPTH, MAX_QUEUE_LAG_MS); // frames waiting for the writer
+        private final AtomicBoolean writerScheduled = new AtomicBoolean(false); // true while a writer task owns the socket (blocking mode)
+        private final AtomicBoolean evicted = new AtomicBoolean(false);
 
         // Constructor to initialize the client socket
         public ClientHandler(Socket clientSocket) {
             this.clientSocket = clientSocket;
             try {
-                // Initialize the ObjectOutputStream
-                objectOut = new ObjectOutputStream(clientSocket.getOutputStream());
+                frameOut = Channels.newChannel(clientSocket.getOutputStream());
             } catch (IOException e) {
-                System.err.println("Error initializing ObjectOutputStream: " + e.getMessage());
+                Log.error("Error initializing client output: " + e.getMessage());
             }
         }
 
+        // Constructor for a connection owned by an NIO selector thread
+        public ClientHandler(NioServer.Connection connection) {
+            this.connection = connection;
+        }
+
         // Entry point for the client thread
         @Override
         public void run() {
             try (BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()))) {
-                out = new PrintWriter(clientSocket.getOutputStream(), true);
-
-                clientID = clientSocket.getInetAddress().getHostAddress().trim(); // Use IP address as ClientID
-                connectedClients.put(clientID, this);
-                System.out.println("Client registered as: " + clientID);
+                register(clientSocket.getInetAddress().getHostAddress()); // Issue a session for this connection
 
                 String clientMessage;
                 while ((clientMessage = in.readLine()) != null) {
-                    System.out.println("[" + clientID + "]: " + clientMessage);
-
-                    // Handle submitted answers
-                    if (clientMessage.startsWith("ANSWER:")) {
-                        String submittedAnswer = clientMessage.substring(7).trim();
-                        hasSubmittedAnswer = true; // Mark that the client has submitted an answer
-                        handleAnswer(submittedAnswer);
-                    }
+                    ServerMetrics.bytesIn.add(clientMessage.length() + 1); // lines are ASCII apart from answer text
+                    handleLine(clientMessage, System.nanoTime());
                 }
             } catch (IOException e) {
-                System.err.println("Error handling client: " + e.getMessage());
+                Log.error("Error handling client: " + e.getMessage());
             } finally {
-                connectedClients.remove(clientID);
+                unregister();
+                releaseConnection();
                 try {
                     clientSocket.close();
                 } catch (IOException e) {
-                    System.err.println("Error closing socket: " + e.getMessage());
+                    Log.error("Error closing socket: " + e.getMessage());
                 }
-                System.out.println("Connection with " + clientID + " closed.");
             }
         }
 
-        // Handle the submitted answer
-        public void handleAnswer(String submittedAnswer) {
-            Question currentQuestion = questionHandler.getQuestionArray().get(0); // Get the current question
+        // Opens a new session for this connection and puts it in the default room until it picks one
+        public void register(String hostAddress) {
+            session = sessions.create(hostAddress.trim(), this);
+            clientID = session.clientID;
+            connectedClients.put(clientID, this);
+            Log.debug("Client registered as: " + clientID);
+            sendFrame(Protocol.encodeSession(session.token, clientID));
+            joinRoom(this, DEFAULT_ROOM);
+        }
 
-            if (submittedAnswer.equals(currentQuestion.getCorrectAnswer())) {
-                // Trigger CORRECT if the submitted answer matches the correct answer
-                sendMessage("CORRECT");
-                System.out.println("Client " + clientID + " answered correctly.");
-                clientScores.merge(clientID, 10, Integer::sum); // Add 10 points for a correct answer
-            } else {
-                // Trigger INCORRECT if the submitted answer does not match the correct answer
-                sendMessage("INCORRECT");
-                System.out.println("Client " + clientID + " answered incorrectly.");
-                clientScores.merge(clientID, -10, Integer::sum); // Deduct 10 points for an incorrect answer
+        // Removes this client from the server once its connection is gone; its session is kept
+        // for a while so the player can resume it from a new connection
+        public void unregister() {
+            if (clientID != null) {
+                connectedClients.remove(clientID, this);
             }
+            if (session != null) {
+                sessions.detach(session, this);
+            }
+            leaveRoom(this);
+            Log.debug("Connection with " + clientID + " closed.");
         }
 
-        // Handle timeout if no answer was submitted
-        public void handleTimeout() {
-            if (!hasSubmittedAnswer && receivedAck) {
-                sendMessage("TIMEOUT");
-                System.out.println("Client " + clientID + " did not submit an answer (TIMEOUT).");
-                clientScores.merge(clientID, -20, Integer::sum); // Deduct 10 points for timeout
+        // Takes over an earlier session of a player who reconnected: same ClientID, score and room,
+        // and the question and phase in play are sent again
+        private void resume(String hexToken) {
+            long token;
+            try {
+                token = Long.parseUnsignedLong(hexToken, 16);
+            } catch (NumberFormatException e) {
+                Log.warn("Client " + clientID + " sent an invalid session token.");
+                return;
+            }
+            SessionRegistry.Session resumed = token == session.token ? null : sessions.resume(token, this);
+            if (resumed == null) {
+                Log.info("Client " + clientID + " could not resume a session; playing as a new player.");
+                return;
+            }
+            SessionRegistry.Session fresh = session;
+            String roomName = resumed.getRoomName();
+            leaveRoom(this);
+            connectedClients.remove(fresh.clientID, this);
+            sessions.remove(fresh); // the fresh session never played
+
+            session = resumed;
+            clientID = resumed.clientID;
+            ClientHandler replaced = connectedClients.put(clientID, this);
+            if (replaced != null && replaced != this) {
+                replaced.close("session resumed on a new connection"); // the old socket may not know it is dead yet
+            }
+            Log.info("ClientID=" + clientID + " resumed its session");
+            sendFrame(Protocol.encodeSession(resumed.token, clientID));
+            joinRoom(this, roomName == null ? DEFAULT_ROOM : roomName);
+            GameRoom joined = room;
+            if (joined != null) {
+                joined.catchUp(this);
             }
         }
 
-        // Reset the submission and ack flags for a new question
-        public void resetFlags() {
-            hasSubmittedAnswer = false;
-            receivedAck = false;
-        }
+        // Handles one line received from the client; receivedAt is the System.nanoTime() it was read at
+        public void handleLine(String clientMessage, long receivedAt) {
+            if (Log.isDebugEnabled()) {
+                Log.debug("[" + clientID + "]: " + clientMessage);
+            }
 
-        // Method to handle positive acknowledgment
-        public void handleAck(boolean isPositive) {
-            receivedAck = isPositive;
-        }
+            // Reconnecting player taking back its session
+            if (clientMessage.startsWith("RESUME:")) {
+                resume(clientMessage.substring(7).trim());
+            }
 
-        // Method to send a Question object to the client
-        public void sendQuestion(Question question) {
-            try {
-                if (objectOut != null) {
-                    objectOut.writeObject(question); // Serialize and send the Question object
-                    objectOut.flush();
-                    System.out.println("Sent question to ClientID=" + clientID);
+            // Clock sync: PING:<client time> is answered at once with the server clock
+            if (clientMessage.startsWith("PING:")) {
+                try {
+                    sendFrame(Protocol.encodePong(Long.parseLong(clientMessage.substring(5).trim()), clockMillis()));
+                } catch (NumberFormatException e) {
+                    Log.warn("Client " + clientID + " sent an invalid PING.");
                 }
-            } catch (IOException e) {
-                System.err.println("Error sending question: " + e.getMessage());
             }
-        }
 
-        // Sends a message to this client
-        public void sendMessage(String message) {
-            try {
-                if (objectOut != null) {
-                    objectOut.writeObject(message); // Send the string as a serialized object
-                    objectOut.flush();
-                    System.out.println("Sent message: " + message);
+            // Room chosen by the client at connect time
+            if (clientMessage.startsWith("JOIN:")) {
+                joinRoom(this, clientMessage.substring(5).trim());
+            }
+
+            // Handle submitted answers: ANSWER:<round id of the question>:<answer>
+            if (clientMessage.startsWith("ANSWER:")) {
+                GameRoom currentRoom = room;
+                int separator = clientMessage.indexOf(':', 7);
+                if (currentRoom == null || separator < 0) {
+                    ServerMetrics.rejectedAnswers.increment();
+                    Log.warn("Client " + clientID + " sent an answer without a question id.");
+                    return;
+                }
+                try {
+                    int roundId = Integer.parseInt(clientMessage.substring(7, separator).trim());
+                    // judged by the room's single answer stage, off this I/O thread
+                    currentRoom.getAnswers().submit(this, roundId, clientMessage.substring(separator + 1).trim(), receivedAt);
+                } catch (NumberFormatException e) {
+                    ServerMetrics.rejectedAnswers.increment();
+                    Log.warn("Client " + clientID + " sent an invalid question id.");
                 }
-            } catch (IOException e) {
-                System.err.println("Error sending message: " + e.getMessage());
             }
         }
 
-        // Returns the name or identifier of this client
-        public String getclientID() {
-            return clientID;
+        // Handle timeout: this client won the buzz but did not answer in time
+        public void handleTimeout() {
+            GameRoom currentRoom = room;
+            if (currentRoom != null) {
+                sendFrame(Protocol.signal(Protocol.TIMEOUT));
+                Log.debug("Client " + clientID + " did not submit an answer (TIMEOUT).");
+                currentRoom.addScore(clientID, -20); // Deduct 20 points for timeout
+            }
         }
-    }
-
-    public Boolean getGameState() {
-        return gameState;
-    }
-
-    //handles game logic 
-    public static void gameStart() {
-        Scanner scanner = new Scanner(System.in);
 
-        // player must press enter on server to begin game
-        System.out.println("When all players are connected, press enter to begin game.");
-        scanner.nextLine();
-
-        // game begins
-        gameState = true;
-        System.out.println("Game started!");
-
-        for (ClientHandler clientHandler : connectedClients.values()) {
-            //send message to all clients that game has started
-            clientHandler.sendMessage("game-started!");
+        // Queues an encoded protocol frame for this client and wakes its writer; never blocks the caller
+        public void sendFrame(ByteBuffer frame) {
+            if (queueFrame(frame)) {
+                flushFrames();
+            }
         }
 
-        //game loop is active while the gameState is true and the array still has questions
-        while(gameState && !questionHandler.outOfQuestions()){
-            Question currentQuestion = questionHandler.getQuestionArray().get(0);
-            // Reset submission and ack flags for all clients at the start of a new question
-            for (ClientHandler clientHandler : connectedClients.values()) {
-                clientHandler.resetFlags();
+        // Queues a frame without waking the writer, so several can go out in one write request;
+        // false if the client was evicted instead
+        public boolean queueFrame(ByteBuffer frame) {
+            byte opcode = Protocol.opcodeOf(frame); // read before another thread starts writing the frame
+            if (!outbound.offer(frame)) {
+                evict("outbound queue full or lagging (" + outbound.depth() + " frames queued)");
+                return false;
             }
-            //for all clients
-            for (ClientHandler clientHandler : connectedClients.values()) {
-                //using clienthandler send a Question to each client at array index 
-                //sends the first index at the questions array, after each question, first index gets removed
-                questionHandler.questionToString();
-                clientHandler.sendQuestion(currentQuestion);
+            if (Log.isDebugEnabled()) {
+                Log.debug("Sent " + Protocol.name(opcode) + " to ClientID=" + clientID);
             }
+            return true;
+        }
 
-            // Start the polling timer (10 seconds for polling)
-            System.out.println("Polling phase started...");
-            ServerTimer pollingTimer = new ServerTimer(15, true);
-            pollingTimer.start();
-
-            // Process UDP messages
-            System.out.println("Processing UDP messages...");
-            new Thread(() -> acceptUDPMessage()).start();
-
-            // Wait for polling to finish
-            try {
-                pollingTimer.join(); // Wait for the polling timer to finish
-            } catch (InterruptedException e) {
-                System.err.println("Polling timer interrupted: " + e.getMessage());
+        // Wakes the writer for whatever frames are queued
+        public void flushFrames() {
+            if (connection != null) {
+                // the selector thread does the actual write
+                connection.requestWrite();
+                return;
             }
+            if (writerScheduled.compareAndSet(false, true)) {
+                startTask(this::drainOutbound);
+            }
+        }
 
-            //after polling ends process the UDP messages
-            UDPThread udpThread = new UDPThread();
-            udpThread.run();
+        // Writes queued frames to the socket; only one writer task runs per client at a time,
+        // so writes need no lock and a stalled socket only holds up this client
+        private void drainOutbound() {
+            do {
+                ByteBuffer frame;
+                while ((frame = outbound.poll()) != null) {
+                    byte opcode = Protocol.opcodeOf(frame);
+                    try {
+                        while (frame.hasRemaining()) {
+                            ServerMetrics.bytesOut.add(frameOut.write(frame));
+                        }
+                        frameWritten(opcode);
+                    } catch (IOException e) {
+                        Log.error("Error sending message: " + e.getMessage());
+                        outbound.clear();
+                    }
+                }
+                writerScheduled.set(false);
+                // a frame may have been queued after the last poll
+            } while (!outbound.isEmpty() && writerScheduled.compareAndSet(false, true));
+        }
 
-            // Start the answering timer (10 seconds for answering)
-            System.out.println("Answering phase started...");
-            ServerTimer answeringTimer = new ServerTimer(10, false);
-            answeringTimer.start();
+        // Called by the writer once a frame is completely written to the socket
+        void frameWritten(byte opcode) {
+            GameRoom currentRoom = room;
+            if (opcode == Protocol.PHASE && currentRoom != null) {
+                ServerMetrics.phaseFanout.record(System.nanoTime() - currentRoom.getPhaseSentAt());
+            }
+        }
 
-            // Wait for answering to finish
-            try {
-                answeringTimer.join(); // Wait for the answering timer to finish
-            } catch (InterruptedException e) {
-                System.err.println("Answering timer interrupted: " + e.getMessage());
-            }
-            // Print the scores of all clients
-            System.out.println("Current Scores:");
-            clientScores.forEach((clientID, score) -> {
-                System.out.println("---------------------------------------------------------------------");
-                System.out.println("ClientID: " + clientID + ", Score: " + score);
-                System.out.println("---------------------------------------------------------------------");
-            });
-
-            // Remove the used question so the next can be displayed
-            questionHandler.nextQuestion();
-            System.out.println("Moving to the next question...");
-        }
-        System.out.println("Game Over!");
-        scanner.close();
-    }
+        // Next frame for the selector thread to write (nio mode)
+        ByteBuffer pollOutbound() {
+            return outbound.poll();
+        }
 
-    // Timer class to handle the countdown
-    public static class ServerTimer extends Thread {
-        private int duration;
-        private boolean isPollingPhase;
+        boolean hasOutbound() {
+            return !outbound.isEmpty();
+        }
 
-        public ServerTimer(int duration, boolean isPollingPhase) {
-            this.duration = duration;
-            this.isPollingPhase = isPollingPhase;
+        public int queueDepth() {
+            return outbound.depth();
         }
 
-        @Override
-        public void run() {
-            while (duration > 0) {
-                System.out.println((isPollingPhase ? "Polling" : "Answering") + " phase timer: " + duration + " seconds remaining...");
+        // Disconnects a client that cannot keep up, so it stops holding frames for everyone else
+        public void evict(String reason) {
+            if (!evicted.compareAndSet(false, true)) {
+                return;
+            }
+            ServerMetrics.evictions.increment();
+            Log.warn("Evicting ClientID=" + clientID + ": " + reason);
+            disconnect();
+        }
 
-                // Broadcast the remaining time to all clients
-                for (ClientHandler clientHandler : connectedClients.values()) {
-                    clientHandler.sendMessage("TIMER:" + duration);
-                }
+        // Closes a connection that is no longer needed
+        void close(String reason) {
+            if (!evicted.compareAndSet(false, true)) {
+                return;
+            }
+            Log.debug("Closing connection of ClientID=" + clientID + ": " + reason);
+            disconnect();
+        }
 
+        private void disconnect() {
+            outbound.clear();
+            if (connection != null) {
+                connection.close();
+            } else {
                 try {
-                    Thread.sleep(1000); // Wait for 1 second
-                } catch (InterruptedException e) {
-                    System.err.println("Timer interrupted: " + e.getMessage());
+                    clientSocket.close(); // unblocks the reader and any stuck writer
+                } catch (IOException e) {
+                    Log.error("Error closing socket: " + e.getMessage());
                 }
-                duration--;
             }
+        }
 
-            if (isPollingPhase) {
-                System.out.println("Polling phase ended.");
-            } else {
-                System.out.println("Answering phase ended.");
-                // Trigger timeout handling for all connected clients
-                for (ClientHandler clientHandler : connectedClients.values()) {
-                    clientHandler.handleTimeout(); // Handle timeout if no answer was submitted
-                }
+        public GameRoom getRoom() {
+            return room;
+        }
+
+        void setRoom(GameRoom room) {
+            this.room = room;
+            if (room != null && session != null) {
+                session.setRoomName(room.getName()); // where a resumed session rejoins
             }
         }
+
+        SessionRegistry.Session getSession() {
+            return session;
+        }
+
+        // Returns the name or identifier of this client
+        public String getclientID() {
+            return clientID;
+        }
     }
 }
@@ -0,0 +1,113 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Server-wide counters and latency histograms, printed by the STATS console command and served
+// by MetricsEndpoint. Recording is lock-free and allocation-free, so it can sit on any hot path.
+public class ServerMetrics {
+    public static final LongAdder connectionsAccepted = new LongAdder(); // TCP connections taken on
+    public static final LongAdder connectionsRefused = new LongAdder(); // TCP connections closed at MAX_CONNECTIONS
+    public static final LongAdder bytesIn = new LongAdder(); // TCP and UDP bytes received from players
+    public static final LongAdder bytesOut = new LongAdder(); // bytes written to player sockets
+    public static final LongAdder framesQueued = new LongAdder(); // frames accepted into outbound queues
+    public static final LongAdder framesCoalesced = new LongAdder(); // PHASE frames replaced by a newer phase before being written
+    public static final LongAdder evictions = new LongAdder(); // slow clients disconnected
+    public static final LongAdder staleBuzzes = new LongAdder(); // buzzes dropped for arriving outside their polling phase
+    public static final LongAdder duplicateBuzzes = new LongAdder(); // repeat buzzes from a client already judged
+    public static final LongAdder rejectedAnswers = new LongAdder(); // answers from a player not holding the buzz, late, repeated or for another question
+    public static final LongAdder answerBatches = new LongAdder(); // batches judged by the rooms' answer inboxes
+    public static final LatencyHistogram answerToVerdict = new LatencyHistogram(); // answer line read to verdict queued
+    public static final LongAdder unknownBuzzes = new LongAdder(); // buzzes whose session token matches no connected player
+    public static final LongAdder questionCacheHits = new LongAdder(); // questions served from pre-encoded frames
+    public static final LongAdder questionCacheMisses = new LongAdder(); // questions decoded and encoded on first use
+    public static final LongAdder journalCommits = new LongAdder(); // score journal fsyncs, one per group of changes
+    public static final LongAdder journalRecords = new LongAdder(); // score changes made durable
+    public static final LatencyHistogram buzzToAck = new LatencyHistogram(); // winning buzz received to ACK queued
+    public static final LatencyHistogram phaseFanout = new LatencyHistogram(); // PHASE broadcast to written to each player's socket
+    public static final LatencyHistogram queueWait = new LatencyHistogram(); // frame queued to taken by its writer
+
+    // Sums the outbound queue depth over the given clients
+    public static String report(Iterable<Server.ClientHandler> clients) {
+        long totalDepth = 0;
+        int maxDepth = 0;
+        for (Server.ClientHandler clientHandler : clients) {
+            int depth = clientHandler.queueDepth();
+            totalDepth += depth;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+        return "ConnectionsAccepted=" + connectionsAccepted.sum()
+                + ", ConnectionsRefused=" + connectionsRefused.sum()
+                + ", BytesIn=" + bytesIn.sum()
+                + ", BytesOut=" + bytesOut.sum()
+                + ", QueuedFrames=" + totalDepth
+                + ", MaxQueueDepth=" + maxDepth
+                + ", FramesQueuedTotal=" + framesQueued.sum()
+                + ", PhasesCoalesced=" + framesCoalesced.sum()
+                + ", QueueWait[" + queueWait.summary() + "]"
+                + ", PhaseFanout[" + phaseFanout.summary() + "]"
+                + ", Evictions=" + evictions.sum()
+                + ", StaleBuzzes=" + staleBuzzes.sum()
+                + ", DuplicateBuzzes=" + duplicateBuzzes.sum()
+                + ", UnknownBuzzes=" + unknownBuzzes.sum()
+                + ", RejectedAnswers=" + rejectedAnswers.sum()
+                + ", AnswerBatches=" + answerBatches.sum()
+                + ", AnswerToVerdict[" + answerToVerdict.summary() + "]"
+                + ", BuzzToAck[" + buzzToAck.summary() + "]"
+                + ", QuestionCacheHits=" + questionCacheHits.sum()
+                + ", QuestionCacheMisses=" + questionCacheMisses.sum()
+                + ", JournalCommits=" + journalCommits.sum()
+                + ", JournalRecords=" + journalRecords.sum()
+                + ", LogMessagesDropped=" + Log.droppedCount();
+    }
+
+    // Every metric by name, for monitoring tools; histograms are expanded into a count and
+    // percentiles in microseconds. Gauges are read from the server at the time of the call.
+    public static Map<String, Long> snapshot() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        long totalDepth = 0;
+        int maxDepth = 0;
+        int clients = 0;
+        for (Server.ClientHandler clientHandler : Server.getConnectedClients()) {
+            int depth = clientHandler.queueDepth();
+            totalDepth += depth;
+            maxDepth = Math.max(maxDepth, depth);
+            clients++;
+        }
+        values.put("Connections", (long) Server.getConnectionCount());
+        values.put("Clients", (long) clients);
+        values.put("Sessions", (long) Server.getSessionCount());
+        values.put("Rooms", (long) Server.getRoomCount());
+        values.put("ConnectionsAccepted", connectionsAccepted.sum());
+        values.put("ConnectionsRefused", connectionsRefused.sum());
+        values.put("BytesIn", bytesIn.sum());
+        values.put("BytesOut", bytesOut.sum());
+        values.put("QueuedFrames", totalDepth);
+        values.put("MaxQueueDepth", (long) maxDepth);
+        values.put("FramesQueuedTotal", framesQueued.sum());
+        values.put("PhasesCoalesced", framesCoalesced.sum());
+        values.put("Evictions", evictions.sum());
+        values.put("StaleBuzzes", staleBuzzes.sum());
+        values.put("DuplicateBuzzes", duplicateBuzzes.sum());
+        values.put("UnknownBuzzes", unknownBuzzes.sum());
+        values.put("RejectedAnswers", rejectedAnswers.sum());
+        values.put("AnswerBatches", answerBatches.sum());
+        values.put("QuestionCacheHits", questionCacheHits.sum());
+        values.put("QuestionCacheMisses", questionCacheMisses.sum());
+        values.put("JournalCommits", journalCommits.sum());
+        values.put("JournalRecords", journalRecords.sum());
+        values.put("LogMessagesDropped", Log.droppedCount());
+        putHistogram(values, "QueueWait", queueWait);
+        putHistogram(values, "PhaseFanout", phaseFanout);
+        putHistogram(values, "BuzzToAck", buzzToAck);
+        putHistogram(values, "AnswerToVerdict", answerToVerdict);
+        return values;
+    }
+
+    private static void putHistogram(Map<String, Long> values, String name, LatencyHistogram histogram) {
+        values.put(name + "Count", histogram.count());
+        values.put(name + "P50Us", histogram.percentile(0.50) / 1000);
+        values.put(name + "P99Us", histogram.percentile(0.99) / 1000);
+        values.put(name + "P999Us", histogram.percentile(0.999) / 1000);
+        values.put(name + "MaxUs", histogram.max() / 1000);
+    }
+}
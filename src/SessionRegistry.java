@@ -0,0 +1,232 @@
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Server-issued player sessions. Every connection gets a session with a random 64-bit token and a
+// ClientID of its own, so players behind one address no longer share an identity. A session outlives
+// its connection for resumeSeconds, so a client that drops can reconnect with RESUME:<token> and carry
+// on as the same player. The token also authenticates UDP buzzes; looking it up reads an open-addressed
+// long table without locking or allocating. Sessions are only created, moved and dropped under the
+// registry's lock, which is rare next to lookups.
+// With a journal, sessions are journalled as they open and end, so they survive a restart: sessions
+// recovered from it are detached and can be resumed for resumeSeconds like any dropped connection.
+// A session that ends for good takes its player's scores with it, as nobody can claim them any more.
+public class SessionRegistry {
+    private final SecureRandom random = new SecureRandom();
+    private final Set<String> clientIDs = ConcurrentHashMap.newKeySet();
+    private final long resumeMillis;
+    private final ScoreJournal journal; // null to keep sessions in memory only
+    private volatile Table table = new Table(1024);
+    private int size = 0; // live sessions, guarded by this
+
+    // One player's identity, independent of the connection it is currently using
+    public static class Session {
+        public final long token; // secret: only ever sent to the session's own client
+        public final String clientID; // public: shown on leaderboards
+        private volatile Server.ClientHandler handler; // null while disconnected
+        private volatile String roomName; // room the player was last in
+        private long detachedAt; // guarded by the registry
+        long lastBuzzRound; // serial of the last polling phase this player buzzed in; UDP listener only
+
+        Session(long token, String clientID, Server.ClientHandler handler) {
+            this.token = token;
+            this.clientID = clientID;
+            this.handler = handler;
+        }
+
+        public Server.ClientHandler getHandler() {
+            return handler;
+        }
+
+        public String getRoomName() {
+            return roomName;
+        }
+
+        void setRoomName(String roomName) {
+            this.roomName = roomName;
+        }
+    }
+
+    public SessionRegistry(int resumeSeconds, ScoreJournal journal) {
+        this.resumeMillis = resumeSeconds * 1000L;
+        this.journal = journal;
+    }
+
+    // Brings back the sessions recovered by the journal, each waiting to be resumed
+    public synchronized void restore() {
+        if (journal == null) {
+            return;
+        }
+        for (Map.Entry<String, Long> recovered : journal.sessions().entrySet()) {
+            Session session = new Session(recovered.getValue(), recovered.getKey(), null);
+            clientIDs.add(session.clientID);
+            put(session);
+            scheduleExpiry(session);
+        }
+    }
+
+    // Opens a session for a new connection from hostAddress
+    public synchronized Session create(String hostAddress, Server.ClientHandler handler) {
+        long token;
+        do {
+            token = random.nextLong();
+        } while (token == 0 || get(token) != null);
+        String clientID;
+        do {
+            clientID = hostAddress + "#" + String.format("%08x", random.nextInt());
+        } while (!clientIDs.add(clientID));
+        Session session = new Session(token, clientID, handler);
+        put(session);
+        if (journal != null) {
+            journal.openSession(token, clientID);
+        }
+        return session;
+    }
+
+    // The session with this token, or null; safe from any thread and allocation-free
+    public Session get(long token) {
+        return table.get(token);
+    }
+
+    // The connection currently holding the session with this token, or null
+    public Server.ClientHandler handlerFor(long token) {
+        Session session = table.get(token);
+        return session == null ? null : session.handler;
+    }
+
+    // Moves a session to a new connection; null if the token is unknown or has expired
+    public synchronized Session resume(long token, Server.ClientHandler handler) {
+        Session session = get(token);
+        if (session != null) {
+            session.handler = handler;
+        }
+        return session;
+    }
+
+    // Marks a session as disconnected and drops it unless it is resumed within resumeSeconds
+    public synchronized void detach(Session session, Server.ClientHandler handler) {
+        if (session.handler != handler) {
+            return; // already resumed on another connection
+        }
+        session.handler = null;
+        scheduleExpiry(session);
+    }
+
+    private void scheduleExpiry(Session session) {
+        long detachedAt = System.nanoTime();
+        session.detachedAt = detachedAt;
+        Server.getPhaseScheduler().schedule(() -> expire(session, detachedAt), resumeMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void expire(Session session, long detachedAt) {
+        if (session.handler == null && session.detachedAt == detachedAt) {
+            remove(session);
+            Log.debug("Session of ClientID=" + session.clientID + " expired");
+        }
+    }
+
+    // Ends a session for good, e.g. when the player is killed or its connection resumed another one;
+    // the player is dropped from every leaderboard and the journal
+    public synchronized void remove(Session session) {
+        if (table.remove(session.token)) {
+            size--;
+            clientIDs.remove(session.clientID);
+            if (journal != null) {
+                journal.closeSession(session.clientID);
+            }
+            Server.sessionEnded(session.clientID);
+        }
+    }
+
+    public boolean contains(String clientID) {
+        return clientIDs.contains(clientID);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private void put(Session session) {
+        Table current = table;
+        if ((current.used + 1) * 2 > current.capacity()) {
+            // rebuild without the removed slots, at least twice as large as the live sessions need
+            Table grown = new Table(Integer.highestOneBit(Math.max(1024, (size + 1) * 4) - 1) << 1);
+            current.copyTo(grown);
+            table = current = grown; // readers switch to the new table on their next lookup
+        }
+        current.put(session);
+        size++;
+    }
+
+    // Open-addressed long -> session table with linear probing. Only the registry's lock holder
+    // writes; a session is stored before its token, so a reader that finds the token also finds
+    // the session. Removed entries keep their token with a null session until the next rebuild.
+    private static class Table {
+        private final AtomicLongArray tokens; // 0 marks a never-used slot
+        private final AtomicReferenceArray<Session> sessions;
+        private final int mask;
+        int used = 0; // live and removed slots
+
+        Table(int capacity) {
+            tokens = new AtomicLongArray(capacity);
+            sessions = new AtomicReferenceArray<>(capacity);
+            mask = capacity - 1;
+        }
+
+        int capacity() {
+            return mask + 1;
+        }
+
+        Session get(long token) {
+            for (int i = slot(token); ; i = (i + 1) & mask) {
+                long found = tokens.get(i);
+                if (found == token) {
+                    return sessions.get(i);
+                }
+                if (found == 0) {
+                    return null;
+                }
+            }
+        }
+
+        void put(Session session) {
+            int i = slot(session.token);
+            while (tokens.get(i) != 0) {
+                i = (i + 1) & mask;
+            }
+            sessions.set(i, session);
+            tokens.set(i, session.token);
+            used++;
+        }
+
+        boolean remove(long token) {
+            for (int i = slot(token); ; i = (i + 1) & mask) {
+                long found = tokens.get(i);
+                if (found == token) {
+                    return sessions.getAndSet(i, null) != null;
+                }
+                if (found == 0) {
+                    return false;
+                }
+            }
+        }
+
+        void copyTo(Table other) {
+            for (int i = 0; i <= mask; i++) {
+                Session session = sessions.get(i);
+                if (session != null) {
+                    other.put(session);
+                }
+            }
+        }
+
+        private int slot(long token) {
+            long h = token * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+    }
+}